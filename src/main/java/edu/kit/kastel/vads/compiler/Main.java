@@ -1,33 +1,103 @@
 package edu.kit.kastel.vads.compiler;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 import edu.kit.kastel.vads.compiler.backend.aasm.CodeGenerator;
+import edu.kit.kastel.vads.compiler.backend.regalloc.AllocationStatistics;
+import edu.kit.kastel.vads.compiler.backend.regalloc.GraphColoringRegisterAllocator;
+import edu.kit.kastel.vads.compiler.backend.regalloc.LinearScanRegisterAllocator;
+import edu.kit.kastel.vads.compiler.backend.regalloc.PhysicalRegister;
+import edu.kit.kastel.vads.compiler.backend.regalloc.RegisterAllocator;
 import edu.kit.kastel.vads.compiler.ir.IrGraph;
 import edu.kit.kastel.vads.compiler.ir.SsaTranslation;
-import edu.kit.kastel.vads.compiler.ir.optimize.LocalValueNumbering;
+import edu.kit.kastel.vads.compiler.ir.optimize.PassManager;
+import edu.kit.kastel.vads.compiler.ir.optimize.PassStatistics;
 import edu.kit.kastel.vads.compiler.lexer.Lexer;
 import edu.kit.kastel.vads.compiler.parser.ParseException;
 import edu.kit.kastel.vads.compiler.parser.Parser;
 import edu.kit.kastel.vads.compiler.parser.TokenSource;
-import edu.kit.kastel.vads.compiler.parser.ast.FunctionTree;
 import edu.kit.kastel.vads.compiler.parser.ast.ProgramTree;
-import edu.kit.kastel.vads.compiler.parser.visitor.ForToWhileElaborator;
 import edu.kit.kastel.vads.compiler.semantic.SemanticAnalysis;
 import edu.kit.kastel.vads.compiler.semantic.SemanticException;
 
 public class Main {
     public static void main(String[] args) throws IOException {
-        if (args.length != 2) {
+        List<String> files = new ArrayList<>();
+        Function<List<PhysicalRegister>, RegisterAllocator> allocatorFactory = GraphColoringRegisterAllocator::new;
+        boolean printStatistics = false;
+        boolean printPassStatistics = false;
+        int optimizationLevel = 1;
+        boolean emitExecutable = true;
+        boolean builtinAssembler = false;
+        for (String arg : args) {
+            if (arg.startsWith("--regalloc=")) {
+                String name = arg.substring("--regalloc=".length());
+                allocatorFactory = switch (name) {
+                    case "graph-coloring" -> GraphColoringRegisterAllocator::new;
+                    case "linear-scan" -> LinearScanRegisterAllocator::new;
+                    default -> {
+                        System.err.println("Invalid arguments: Unknown register allocator " + name
+                            + ", expected graph-coloring or linear-scan");
+                        System.exit(3);
+                        throw new AssertionError("unreachable");
+                    }
+                };
+            } else if (arg.equals("--regalloc-stats")) {
+                printStatistics = true;
+            } else if (arg.equals("--pass-stats")) {
+                printPassStatistics = true;
+            } else if (arg.matches("-O[012]")) {
+                optimizationLevel = arg.charAt(2) - '0';
+            } else if (arg.startsWith("--emit=")) {
+                String kind = arg.substring("--emit=".length());
+                emitExecutable = switch (kind) {
+                    case "asm" -> false;
+                    case "exe" -> true;
+                    default -> {
+                        System.err.println("Invalid arguments: Unknown output kind " + kind + ", expected asm or exe");
+                        System.exit(3);
+                        throw new AssertionError("unreachable");
+                    }
+                };
+            } else if (arg.startsWith("--assembler=")) {
+                String name = arg.substring("--assembler=".length());
+                builtinAssembler = switch (name) {
+                    case "gcc" -> false;
+                    case "builtin" -> true;
+                    default -> {
+                        System.err.println("Invalid arguments: Unknown assembler " + name + ", expected gcc or builtin");
+                        System.exit(3);
+                        throw new AssertionError("unreachable");
+                    }
+                };
+            } else if (arg.startsWith("--")) {
+                System.err.println("Invalid arguments: Unknown option " + arg);
+                System.exit(3);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
             System.err.println("Invalid arguments: Expected one input file and one output file");
             System.exit(3);
         }
-        Path input = Path.of(args[0]);
-        Path output = Path.of(args[1]);
+        Path input = Path.of(files.get(0));
+        Path output = Path.of(files.get(1));
         ProgramTree program = lexAndParse(input);
 
         //program = (ProgramTree) new ForToWhileElaborator().transform(program);
@@ -39,15 +109,123 @@ public class Main {
             System.exit(7);
             return;
         }
-        List<IrGraph> graphs = new ArrayList<>();
-        for (FunctionTree function : program.topLevelTrees()) {
-            SsaTranslation translation = new SsaTranslation(function, new LocalValueNumbering());
-            graphs.add(translation.translate());
+        // each function is translated only when the code generator gets to it, and dropped after it was written
+        PassManager passManager = PassManager.forLevel(optimizationLevel, printPassStatistics);
+        Iterable<IrGraph> graphs = () -> program.topLevelTrees().stream()
+            .map(function -> passManager.optimize(optimizer -> new SsaTranslation(function, optimizer).translate()))
+            .iterator();
+
+        CodeGenerator codeGenerator = new CodeGenerator(allocatorFactory);
+        if (emitExecutable && builtinAssembler) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                codeGenerator.generateExecutable(graphs, out);
+            }
+            makeExecutable(output);
+        } else if (emitExecutable) {
+            assembleWithGcc(codeGenerator, graphs, output);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(output)) {
+                codeGenerator.generateCode(graphs, writer);
+            }
+        }
+        if (printPassStatistics) {
+            printPassStatistics(passManager.statistics());
+        }
+        if (printStatistics) {
+            printStatistics(codeGenerator.statistics());
+        }
+    }
+
+    /// Pipes the assembly into `gcc` while it is generated, so assembling can start before the last function
+    /// is done and the assembly never touches the disk.
+    /// If generating fails or `gcc` does, no executable is left behind.
+    private static void assembleWithGcc(CodeGenerator codeGenerator, Iterable<IrGraph> graphs, Path output)
+        throws IOException {
+        Process gcc = new ProcessBuilder("gcc", "-x", "assembler", "-", "-o", output.toString())
+            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        // not closed on failure: gcc would take the end of its input for the end of the program and link it
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gcc.getOutputStream(), StandardCharsets.UTF_8));
+        try {
+            codeGenerator.generateCode(graphs, writer);
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            killGcc(gcc);
+            try {
+                writer.close();
+            } catch (IOException closeFailure) {
+                // the pipe is broken now that gcc is gone
+                e.addSuppressed(closeFailure);
+            }
+            Files.deleteIfExists(output);
+            throw e;
+        }
+        int exitCode;
+        try {
+            exitCode = gcc.waitFor();
+        } catch (InterruptedException e) {
+            killGcc(gcc);
+            Files.deleteIfExists(output);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for gcc");
+        }
+        if (exitCode != 0) {
+            Files.deleteIfExists(output);
+            throw new IOException("gcc failed with exit code " + exitCode);
+        }
+    }
+
+    /// Kills `gcc` and the assembler it started, which reads the pipe directly, and waits until `gcc` is gone,
+    /// so it does not write the output file anymore.
+    private static void killGcc(Process gcc) {
+        boolean interrupted = false;
+        List<ProcessHandle> children = gcc.descendants().toList();
+        gcc.destroyForcibly();
+        children.forEach(ProcessHandle::destroyForcibly);
+        while (gcc.isAlive()) {
+            try {
+                gcc.waitFor();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void makeExecutable(Path file) throws IOException {
+        try {
+            Set<PosixFilePermission> permissions = EnumSet.copyOf(Files.getPosixFilePermissions(file));
+            permissions.addAll(List.of(
+                PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_EXECUTE
+            ));
+            Files.setPosixFilePermissions(file, permissions);
+        } catch (UnsupportedOperationException e) {
+            // the file system has no execute permission, so the file can be run anyway
+        }
+    }
+
+    private static void printPassStatistics(List<PassStatistics> statistics) {
+        System.err.printf("%-16s %-24s %10s %8s %8s %8s%n", "function", "pass", "time[us]", "before", "after", "delta");
+        for (PassStatistics s : statistics) {
+            System.err.printf("%-16s %-24s %10d %8d %8d %+8d%n",
+                s.function(), s.pass(), s.nanos() / 1000, s.nodesBefore(), s.nodesAfter(),
+                s.nodesAfter() - s.nodesBefore());
         }
+    }
 
-        // TODO: generate assembly and invoke gcc instead of generating abstract assembly
-        String s = new CodeGenerator().generateCode(graphs);
-        Files.writeString(output, s);
+    private static void printStatistics(List<AllocationStatistics> statistics) {
+        System.err.printf("%-16s %7s %7s %6s %6s %6s %9s %9s %10s %10s %10s %10s%n",
+            "function", "values", "edges", "clique", "colors", "spills", "coalesced", "copies",
+            "live[us]", "build[us]", "order[us]", "color[us]");
+        for (AllocationStatistics s : statistics) {
+            System.err.printf("%-16s %7d %7d %6d %6d %6d %9d %9d %10d %10d %10d %10d%n",
+                s.function(), s.values(), s.interferenceEdges(), s.maxCliqueSize(), s.colorsUsed(), s.spills(),
+                s.coalescedCopies(), s.remainingCopies(),
+                s.livenessNanos() / 1000, s.buildNanos() / 1000, s.orderingNanos() / 1000, s.coloringNanos() / 1000);
+        }
     }
 
     private static ProgramTree lexAndParse(Path input) throws IOException {
@@ -9,10 +9,9 @@ import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
 import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
 import edu.kit.kastel.vads.compiler.ir.node.StartNode;
 
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 public class AasmRegisterAllocator implements RegisterAllocator {
     private int id;
@@ -20,15 +19,16 @@ public class AasmRegisterAllocator implements RegisterAllocator {
 
     @Override
     public Map<Node, Register> allocateRegisters(IrGraph graph) {
-        Set<Node> visited = new HashSet<>();
-        visited.add(graph.endBlock());
+        BitSet visited = new BitSet(graph.nodeCount());
+        visited.set(graph.endBlock().id());
         scan(graph.endBlock(), visited);
         return Map.copyOf(this.registers);
     }
 
-    private void scan(Node node, Set<Node> visited) {
+    private void scan(Node node, BitSet visited) {
         for (Node predecessor : node.predecessors()) {
-            if (visited.add(predecessor)) {
+            if (!visited.get(predecessor.id())) {
+                visited.set(predecessor.id());
                 scan(predecessor, visited);
             }
         }
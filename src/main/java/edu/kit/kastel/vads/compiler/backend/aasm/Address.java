@@ -0,0 +1,26 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import org.jspecify.annotations.Nullable;
+
+/// A memory operand `displacement(base, index, scale)` that is only ever used to compute
+/// `base + index * scale + displacement` with `leal`, never to access memory.
+///
+/// @param scale `1`, `2`, `4` or `8`
+record Address(@Nullable Register base, @Nullable Register index, int scale, int displacement) implements Register {
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (displacement != 0 || base == null && index == null) {
+            builder.append(displacement);
+        }
+        builder.append('(');
+        if (base != null) {
+            builder.append(base);
+        }
+        if (index != null) {
+            builder.append(',').append(index).append(',').append(scale);
+        }
+        return builder.append(')').toString();
+    }
+}
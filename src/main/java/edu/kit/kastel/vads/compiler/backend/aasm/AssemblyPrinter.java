@@ -0,0 +1,34 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+
+import java.io.IOException;
+import java.util.List;
+
+/// Renders [Instruction]s as AT&T assembler text for the GNU assembler.
+final class AssemblyPrinter {
+    private AssemblyPrinter() {
+
+    }
+
+    static void print(List<Instruction> instructions, Appendable out) throws IOException {
+        for (Instruction instruction : instructions) {
+            print(instruction, out);
+        }
+    }
+
+    static void print(Instruction instruction, Appendable out) throws IOException {
+        switch (instruction) {
+            case Instruction.Label(String name) -> out.append(name).append(":\n");
+            case Instruction.Operation(String mnemonic, List<Register> operands) -> {
+                out.append("    ").append(mnemonic);
+                for (int i = 0; i < operands.size(); i++) {
+                    out.append(i == 0 ? " " : ", ").append(operands.get(i).toString());
+                }
+                out.append("\n");
+            }
+            case Instruction.Jump(String mnemonic, String target) ->
+                out.append("    ").append(mnemonic).append(" ").append(target).append("\n");
+        }
+    }
+}
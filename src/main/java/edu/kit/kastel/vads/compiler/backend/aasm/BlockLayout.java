@@ -0,0 +1,83 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/// Orders the blocks of a function so that control flow falls through from a block to its most
+/// likely successor instead of jumping there, following the bottom-up chaining of
+/// [`Profile Guided Code Positioning`](https://dl.acm.org/doi/10.1145/93548.93550) by Pettis and Hansen.
+///
+/// There is no profile, so edges are weighted by the [loop depth][ControlFlowGraph#loopDepth]
+/// they stay in: an edge counts `10^d` for the smaller loop depth `d` of its ends, which makes edges
+/// into and around loop bodies more likely than loop exits. Edges of equal weight are taken in
+/// block order, and the true edge of a branch before the false edge.
+///
+/// Every block starts as a chain of its own. Going through the edges from most to least likely,
+/// the chain ending in the source is appended the chain starting with the target, unless both are the
+/// same chain or the target is the start block. Finally, the chains are placed in the order of their
+/// earliest block in reverse postorder, so the chain of the start block comes first and a loop comes
+/// before the code after it.
+final class BlockLayout {
+    private BlockLayout() {
+
+    }
+
+    /// {@return all blocks of the control flow graph in the order their code should be placed}
+    static List<Block> order(ControlFlowGraph cfg) {
+        List<Edge> edges = new ArrayList<>();
+        for (Block block : cfg.blocks()) {
+            for (Block successor : cfg.successors(block)) {
+                int depth = Math.min(cfg.loopDepth(block), cfg.loopDepth(successor));
+                edges.add(new Edge(cfg.index(block), cfg.index(successor), Math.pow(10, depth)));
+            }
+        }
+        // the sort is stable, so ties stay in block order and the true edge comes first
+        edges.sort(Comparator.comparingDouble(Edge::weight).reversed());
+
+        int blockCount = cfg.blockCount();
+        // chains are linked lists of block indices, identified by their first block
+        int[] next = new int[blockCount];
+        int[] head = new int[blockCount];
+        int[] tail = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            next[i] = -1;
+            head[i] = i;
+            tail[i] = i;
+        }
+        for (Edge edge : edges) {
+            int from = edge.from();
+            int to = edge.to();
+            // the start block is index 0 and stays the head of its chain
+            if (to == 0 || tail[head[from]] != from || head[to] != to || head[from] == to) {
+                continue;
+            }
+            int chain = head[from];
+            next[from] = to;
+            tail[chain] = tail[to];
+            for (int block = to; block != -1; block = next[block]) {
+                head[block] = chain;
+            }
+        }
+
+        // blocks are numbered in reverse postorder, so a chain is placed where its earliest block would be
+        List<Block> order = new ArrayList<>(blockCount);
+        boolean[] placed = new boolean[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            if (placed[head[i]]) {
+                continue;
+            }
+            placed[head[i]] = true;
+            for (int block = head[i]; block != -1; block = next[block]) {
+                order.add(cfg.blocks().get(block));
+            }
+        }
+        return order;
+    }
+
+    private record Edge(int from, int to, double weight) {
+    }
+}
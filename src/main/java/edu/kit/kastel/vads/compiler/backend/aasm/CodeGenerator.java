@@ -1,333 +1,672 @@
 package edu.kit.kastel.vads.compiler.backend.aasm;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Label;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Binary;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.CompareAndBranch;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.ConditionalMove;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Divide;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.LoadAddress;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.MultiplyImmediate;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.SetCondition;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Shift;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Unary;
+import edu.kit.kastel.vads.compiler.backend.regalloc.AllocationStatistics;
 import edu.kit.kastel.vads.compiler.backend.regalloc.GraphColoringRegisterAllocator;
 import edu.kit.kastel.vads.compiler.backend.regalloc.PhysicalRegister;
 import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import edu.kit.kastel.vads.compiler.backend.regalloc.RegisterAllocator;
+import edu.kit.kastel.vads.compiler.backend.regalloc.SpillRegister;
 import edu.kit.kastel.vads.compiler.ir.IrGraph;
-import edu.kit.kastel.vads.compiler.ir.node.AddNode;
-import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
 import edu.kit.kastel.vads.compiler.ir.node.Block;
-import edu.kit.kastel.vads.compiler.ir.node.BranchNode;
 import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
-import edu.kit.kastel.vads.compiler.ir.node.DivNode;
-import edu.kit.kastel.vads.compiler.ir.node.JumpNode;
-import edu.kit.kastel.vads.compiler.ir.node.ModNode;
-import edu.kit.kastel.vads.compiler.ir.node.MulNode;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
 import edu.kit.kastel.vads.compiler.ir.node.Phi;
-import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
-import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
-import edu.kit.kastel.vads.compiler.ir.node.StartNode;
-import edu.kit.kastel.vads.compiler.ir.node.SubNode;
+import static edu.kit.kastel.vads.compiler.backend.aasm.Instruction.operation;
 import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
 
 public class CodeGenerator {
+    private static final PhysicalRegister EAX = new PhysicalRegister("%eax", 0);
+    private static final PhysicalRegister ECX = new PhysicalRegister("%ecx", 2);
+    private static final PhysicalRegister EDX = new PhysicalRegister("%edx", 3);
+    private static final Register CL = new PhysicalRegister("%cl", 2);
+    // never handed out by the allocator, so code may use it for intermediate values
+    private static final Register SCRATCH = new PhysicalRegister("%r11d", -1);
+    private static final Register RBP = new PhysicalRegister("%rbp", -1);
+    private static final Register RSP = new PhysicalRegister("%rsp", -1);
+    private static final Register RAX = new PhysicalRegister("%rax", -1);
+    private static final Register RDI = new PhysicalRegister("%rdi", -1);
+
+    private final Function<List<PhysicalRegister>, RegisterAllocator> allocatorFactory;
+    private final List<AllocationStatistics> statistics = new ArrayList<>();
+
+    public CodeGenerator() {
+        this(GraphColoringRegisterAllocator::new);
+    }
+
+    /// @param allocatorFactory creates the register allocator for a function from the registers it may hand out
+    public CodeGenerator(Function<List<PhysicalRegister>, RegisterAllocator> allocatorFactory) {
+        this.allocatorFactory = allocatorFactory;
+    }
+
+    /// {@return the allocation statistics of every function generated so far, if the allocator collects them}
+    public List<AllocationStatistics> statistics() {
+        return Collections.unmodifiableList(this.statistics);
+    }
 
     public String generateCode(List<IrGraph> program) {
-        StringBuilder builder = new StringBuilder();
+        StringWriter writer = new StringWriter();
+        try {
+            generateCode(program, writer);
+        } catch (IOException e) {
+            // a StringWriter never fails
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /// Writes the assembly of the program to `out`, one function after the other.
+    /// Nothing of a function is kept once it was written, so if `program` creates its graphs on demand,
+    /// only the graph of the current function needs to be in memory.
+    public void generateCode(Iterable<IrGraph> program, Writer out) throws IOException {
+        out.append(".global main\n")
+                .append(".global _main\n")
+                // marks the stack as non-executable, otherwise ld warns and makes it executable
+                .append(".section .note.GNU-stack,\"\",@progbits\n")
+                .append(".text\n\n");
+        AssemblyPrinter.print(entry(), out);
+        out.append("\n");
+        for (IrGraph graph : program) {
+            AssemblyPrinter.print(generateFunction(graph), out);
+        }
+        out.flush();
+    }
 
+    /// Writes the program as a static x86-64 Linux executable to `out`, encoding the instructions
+    /// to machine code itself instead of going through an assembler and linker.
+    /// Only the machine code of the functions is kept until all of them are generated.
+    public void generateExecutable(Iterable<IrGraph> program, OutputStream out) throws IOException {
+        X86Encoder encoder = new X86Encoder();
+        encoder.add(entry());
         for (IrGraph graph : program) {
-            List<PhysicalRegister> registers = List.of(
-                    new PhysicalRegister("%ebx", 0),
-                    new PhysicalRegister("%ecx", 1),
-                    new PhysicalRegister("%edx", 2),
-                    new PhysicalRegister("%esi", 3),
-                    new PhysicalRegister("%edi", 4),
-                    new PhysicalRegister("%r8d", 5),
-                    new PhysicalRegister("%r9d", 6),
-                    new PhysicalRegister("%r10d", 7),
-                    new PhysicalRegister("%r11d", 8),
-                    new PhysicalRegister("%r12d", 9),
-                    new PhysicalRegister("%r13d", 10),
-                    new PhysicalRegister("%r14d", 11),
-                    new PhysicalRegister("%r15d", 12)
-            );
-
-            // 使用图着色寄存器分配器
-            GraphColoringRegisterAllocator allocator = new GraphColoringRegisterAllocator(registers);
-            Map<Node, Register> allocation = allocator.allocateRegisters(graph);
-//            AasmRegisterAllocator allocator = new AasmRegisterAllocator();
-//            Map<Node, Register> registers = allocator.allocateRegisters(graph);
-            builder.append(".global main\n")
-                    .append(".global _main\n")
-                    .append(".text\n\n")
-                    .append("main:\n")
-                    .append("    call _main\n")
-                    .append("    movq %rax, %rdi\n")
-                    .append("    movq $0x3C, %rax\n")
-                    .append("    syscall\n\n")
-                    .append("_main:\n");
-
-            generateForGraph(graph, builder, allocation);
-        }
-        return builder.toString();
+            encoder.add(generateFunction(graph));
+        }
+        ElfWriter.write(encoder.code(), encoder.symbol("main"), out);
     }
 
-    private void generateForGraph(IrGraph graph, StringBuilder builder, Map<Node, Register> registers) {
-        Set<Node> visited = new HashSet<>();
-        // 从 endBlock 开始遍历以确保所有节点都被访问
-        scan(graph.endBlock(), visited, builder, registers);
+    /// {@return the entry point `main`, which calls `_main` and exits with its result}
+    private static List<Instruction> entry() {
+        return List.of(
+                new Label("main"),
+                new Instruction.Jump("call", "_main"),
+                operation("movq", RAX, RDI),
+                operation("movq", new Immediate(0x3C), RAX),
+                operation("syscall")
+        );
     }
 
-    private void scan(Node node, Set<Node> visited, StringBuilder builder, Map<Node, Register> registers) {
-        // 避免重复访问
-        if (!visited.add(node)) {
-            return;
+    /// {@return the instructions of the function, after register allocation and peephole optimization}
+    private List<Instruction> generateFunction(IrGraph graph) {
+        List<PhysicalRegister> registers = List.of(
+                EAX,
+                new PhysicalRegister("%ebx", 1),
+                ECX,
+                EDX,
+                new PhysicalRegister("%esi", 4),
+                new PhysicalRegister("%edi", 5),
+                new PhysicalRegister("%r8d", 6),
+                new PhysicalRegister("%r9d", 7),
+                new PhysicalRegister("%r10d", 8),
+                new PhysicalRegister("%r12d", 9),
+                new PhysicalRegister("%r13d", 10),
+                new PhysicalRegister("%r14d", 11),
+                new PhysicalRegister("%r15d", 12)
+        );
+
+        // blocks and their nodes are emitted in the same order the liveness analysis assumes
+        ControlFlowGraph cfg = new ControlFlowGraph(graph);
+        InstructionSelector selector = new InstructionSelector(cfg);
+        RegisterAllocator allocator = this.allocatorFactory.apply(registers);
+        Map<Node, Register> allocation = new HashMap<>(
+            allocator.allocateRegisters(graph, new X86RegisterConstraints(EAX, ECX, EDX, selector.folded()))
+        );
+        AllocationStatistics allocationStatistics = allocator.statistics();
+        if (allocationStatistics != null) {
+            this.statistics.add(allocationStatistics);
         }
+//        AasmRegisterAllocator allocator = new AasmRegisterAllocator();
+//        Map<Node, Register> registers = allocator.allocateRegisters(graph);
 
-        // 如果是基本块，先输出标签
-        if (node instanceof Block block) {
-            builder.append(".L").append(block.hashCode()).append(":\n");
-            
-            // 遍历并生成该块中的所有节点（按照前驱顺序）
-            for (Node predecessor : node.predecessors()) {
-                if (!(predecessor instanceof Block)) {  // 不处理其他Block，避免嵌套
-                    scan(predecessor, visited, builder, registers);
-                }
-            }
-            return;  // Block节点本身不需要生成额外代码
+        List<Instruction> code = new ArrayList<>();
+        code.add(new Label("_main"));
+        code.add(operation("pushq", RBP));
+        code.add(operation("movq", RSP, RBP));
+        int frameSize = frameSize(allocation);
+        if (frameSize > 0) {
+            code.add(operation("subq", new Immediate(frameSize), RSP));
         }
+        generateForGraph(cfg, selector, code, allocation);
+        return PeepholeOptimizer.optimize(code);
+    }
 
-        // 处理非Block节点
-        // 先处理当前节点的非Block前驱
-        for (Node predecessor : node.predecessors()) {
-            if (!(predecessor instanceof Block)) {
-                scan(predecessor, visited, builder, registers);
+    /// {@return the number of bytes below `%rbp` needed for spill slots, keeping `%rsp` 16 byte aligned}
+    private static int frameSize(Map<Node, Register> registers) {
+        int size = 0;
+        for (Register register : registers.values()) {
+            if (register instanceof SpillRegister(int offset)) {
+                size = Math.max(size, -offset);
             }
         }
+        return (size + 15) & -16;
+    }
 
-        // 生成当前节点的代码
-        switch (node) {
-            case AddNode add -> binary(builder, registers, add, "addl");
-            case SubNode sub -> binary(builder, registers, sub, "subl");
-            case MulNode mul -> handleMultiplication(builder, registers, mul);
-            case DivNode div -> {
-                Register lhs = registers.get(predecessorSkipProj(div, BinaryOperationNode.LEFT));
-                Register rhs = registers.get(predecessorSkipProj(div, BinaryOperationNode.RIGHT));
-                Register out = registers.get(div);
-
-                String rhsReg = rhs.toString();
-                if (rhsReg.equals("%eax") || rhsReg.equals("%edx")) {
-                    builder.append("    movl ").append(rhs).append(", %r10d\n");
+    private void generateForGraph(
+            ControlFlowGraph cfg,
+            InstructionSelector selector,
+            List<Instruction> code,
+            Map<Node, Register> registers
+    ) {
+        IrGraph graph = cfg.graph();
+        // constants have no register, every use encodes them as an immediate
+        for (Block block : cfg.blocks()) {
+            for (Node node : cfg.nodes(block)) {
+                if (node instanceof ConstIntNode c) {
+                    registers.put(c, new Immediate(c.value()));
                 }
+            }
+        }
+        UnaryOperator<Register> physical = operand -> operand instanceof VirtualRegister(int id)
+            ? registers.get(graph.node(id))
+            : operand;
+        // copies on edges that are not expected to be taken are placed behind the function
+        List<Instruction> outOfLine = new ArrayList<>();
+        List<Block> layout = BlockLayout.order(cfg);
+        for (int i = 0; i < layout.size(); i++) {
+            Block block = layout.get(i);
+            Block next = i + 1 < layout.size() ? layout.get(i + 1) : null;
+            code.add(new Label(label(block)));
+            for (MachineInstruction instruction : selector.instructions(block)) {
+                lower(cfg, block, next, instruction.withRegisters(physical), code, outOfLine, registers);
+            }
+        }
+        code.addAll(outOfLine);
+    }
 
-                builder.append("    movl ").append(lhs).append(", %eax\n");
-                builder.append("    cltd\n");
-
-                if (rhsReg.equals("%eax") || rhsReg.equals("%edx")) {
-                    builder.append("    idivl %r10d\n");
-                } else {
-                    builder.append("    idivl ").append(rhs).append("\n");
+    /// Emits the x86 instructions for a selected instruction whose operands are physical already.
+    /// Jumps to `next` are emitted as well, the peephole optimizer removes them.
+    private void lower(
+            ControlFlowGraph cfg,
+            Block block,
+            Block next,
+            MachineInstruction instruction,
+            List<Instruction> code,
+            List<Instruction> outOfLine,
+            Map<Node, Register> registers
+    ) {
+        switch (instruction) {
+            case Binary binary -> binary(code, binary);
+            case MultiplyImmediate multiply -> multiplyImmediate(code, multiply);
+            case LoadAddress address -> loadAddress(code, address);
+            case Unary unary -> {
+                if (!unary.operand().equals(unary.destination())) {
+                    move(code, unary.operand(), unary.destination());
                 }
-
-                builder.append("    movl %eax, ").append(out).append("\n");
+                code.add(operation(unary.opcode(), unary.destination()));
             }
-            case ModNode mod -> {
-                Register lhs = registers.get(predecessorSkipProj(mod, BinaryOperationNode.LEFT));
-                Register rhs = registers.get(predecessorSkipProj(mod, BinaryOperationNode.RIGHT));
-                Register out = registers.get(mod);
-
-                String rhsReg = rhs.toString();
-                if (rhsReg.equals("%eax") || rhsReg.equals("%edx")) {
-                    builder.append("    movl ").append(rhs).append(", %r10d\n");
+            case Shift shift -> shift(code, shift);
+            case Divide divide -> division(code, divide);
+            case SetCondition set -> setCondition(code, set);
+            case ConditionalMove move -> conditionalMove(code, move);
+            case MachineInstruction.Return(Register value) -> {
+                if (!EAX.equals(value)) {
+                    code.add(operation("movl", value, EAX));
                 }
+                code.add(operation("leave"));
+                code.add(operation("ret"));
+            }
+            case CompareAndBranch branch -> {
+                if (branch.left() instanceof Immediate(int left) && branch.right() instanceof Immediate(int right)) {
+                    // the outcome is known, only one edge is ever taken
+                    Block target = branch.condition().holds(left, right) ? branch.trueTarget() : branch.falseTarget();
+                    generatePhiMoves(cfg, block, target, code, registers);
+                    code.add(new Instruction.Jump("jmp", label(target)));
+                    return;
+                }
+                // the layout placed the likely successor next, control falls through to it
+                boolean fallToFalse = branch.falseTarget() == next;
+                Block likely = fallToFalse ? branch.falseTarget() : branch.trueTarget();
+                Block unlikely = fallToFalse ? branch.trueTarget() : branch.falseTarget();
+                // phi moves can't be placed before the branch, as they only belong to one of the edges
+                String unlikelyLabel = label(unlikely);
+                if (hasPhiMoves(cfg, block, unlikely, registers)) {
+                    unlikelyLabel = edgeLabel(block, unlikely);
+                    outOfLine.add(new Label(unlikelyLabel));
+                    generatePhiMoves(cfg, block, unlikely, outOfLine, registers);
+                    outOfLine.add(new Instruction.Jump("jmp", label(unlikely)));
+                }
+                Condition condition = compare(code, branch.condition(), branch.left(), branch.right());
+                Condition toUnlikely = fallToFalse ? condition : condition.negate();
+                code.add(new Instruction.Jump("j" + toUnlikely.suffix(), unlikelyLabel));
+                generatePhiMoves(cfg, block, likely, code, registers);
+                code.add(new Instruction.Jump("jmp", label(likely)));
+            }
+            case MachineInstruction.Jump(Block target) -> {
+                generatePhiMoves(cfg, block, target, code, registers);
+                code.add(new Instruction.Jump("jmp", label(target)));
+            }
+        }
+    }
 
-                builder.append("    movl ").append(lhs).append(", %eax\n");
-                builder.append("    cltd\n");
+    private static String label(Block block) {
+        return ".L" + block.id();
+    }
 
-                if (rhsReg.equals("%eax") || rhsReg.equals("%edx")) {
-                    builder.append("    idivl %r10d\n");
-                } else {
-                    builder.append("    idivl ").append(rhs).append("\n");
-                }
+    private static String edgeLabel(Block from, Block to) {
+        return ".L" + from.id() + "_" + to.id();
+    }
+
+    private static boolean hasPhiMoves(ControlFlowGraph cfg, Block from, Block to, Map<Node, Register> registers) {
+        return !phiMoves(cfg, from, to, registers).isEmpty();
+    }
 
-                builder.append("    movl %edx, ").append(out).append("\n");
+    /// {@return the copies needed to pass the phi operands along the edge from `from` to `to`}
+    private static List<Move> phiMoves(ControlFlowGraph cfg, Block from, Block to, Map<Node, Register> registers) {
+        List<Move> moves = new ArrayList<>();
+        List<Block> predecessors = cfg.predecessors(to);
+        for (Node node : cfg.nodes(to)) {
+            if (!(node instanceof Phi phi)) {
+                break;
             }
-            case ReturnNode r -> {
-                Node result = predecessorSkipProj(r, ReturnNode.RESULT);
-                Register reg = registers.get(result);
-                builder.append("    movl ").append(reg).append(", %eax\n");
-                builder.append("    ret\n");
-                // Mark that we've generated a return - no more instructions should follow
-                return;  // Exit early to prevent dead code generation
+            Register destination = registers.get(phi);
+            if (destination == null) {
+                continue;
             }
-            case ConstIntNode c -> {
-                Register reg = registers.get(c);
-                builder.append("    movl $").append(c.value()).append(", ").append(reg).append("\n");
+            for (int i = 0; i < predecessors.size(); i++) {
+                Register source = registers.get(predecessorSkipProj(phi, i));
+                if (predecessors.get(i) == from && source != null && !source.equals(destination)) {
+                    moves.add(new Move(destination, source));
+                }
             }
-            case Phi phi -> {
-                // Simplified Phi handling to reduce redundant instructions
-                Register out = registers.get(phi);
-                if (phi.predecessors().size() > 0) {
-                    Node firstPred = phi.predecessors().get(0);
-                    Register firstReg = registers.get(firstPred);
-                    // Only generate move if registers are different and both are valid
-                    if (firstReg != null && out != null && !out.equals(firstReg)) {
-                        builder.append("    movl ").append(firstReg).append(", ").append(out).append("\n");
-                    }
-                    // For additional predecessors, we would need more sophisticated phi resolution
-                    // For now, keep it simple to avoid the redundant cmovne instructions
+        }
+        return moves;
+    }
+
+    /// All phis of a block take their operands at once, so the copies form a parallel move.
+    /// They are ordered such that no register is overwritten before it was read,
+    /// cycles are broken up using the scratch register.
+    private static void generatePhiMoves(
+            ControlFlowGraph cfg,
+            Block from,
+            Block to,
+            List<Instruction> code,
+            Map<Node, Register> registers
+    ) {
+        List<Move> pending = phiMoves(cfg, from, to, registers);
+        while (!pending.isEmpty()) {
+            Move ready = null;
+            for (Move move : pending) {
+                if (pending.stream().noneMatch(other -> other.source().equals(move.destination()))) {
+                    ready = move;
+                    break;
                 }
             }
-            case ProjNode proj -> {
-                Node in = proj.predecessor(ProjNode.IN);
-                Register inReg = registers.get(in);
-                Register outReg = registers.get(proj);
-                builder.append("    movl ").append(inReg).append(", ").append(outReg).append("\n");
+            if (ready != null) {
+                move(code, ready.source(), ready.destination());
+                pending.remove(ready);
+                continue;
             }
-            case StartNode _ -> {
-                // 开始节点不需要生成代码
+            // only cycles are left: save one destination, so the move writing it becomes ready
+            Register blocked = pending.getFirst().destination();
+            code.add(operation("movl", blocked, SCRATCH));
+            pending.replaceAll(move -> move.source().equals(blocked) ? new Move(move.destination(), SCRATCH) : move);
+        }
+    }
+
+    private record Move(Register destination, Register source) {
+    }
+
+    /// Copies a value without touching the scratch register, which may hold a value saved by [#generatePhiMoves].
+    /// x86 has no memory to memory `movl`, so two spill slots are copied through the stack;
+    /// slots are 8 bytes wide, so this moves the whole slot.
+    private static void move(List<Instruction> code, Register source, Register destination) {
+        if (source instanceof SpillRegister && destination instanceof SpillRegister) {
+            code.add(operation("pushq", source));
+            code.add(operation("popq", destination));
+        } else {
+            code.add(operation("movl", source, destination));
+        }
+    }
+
+    /// A shift by a constant is a plain two address instruction. Any other count has to be in `%cl`.
+    /// The allocator keeps all other operands out of `%ecx`, see [X86RegisterConstraints],
+    /// but the result may be placed there, so it is computed in the scratch register then.
+    private static void shift(List<Instruction> code, Shift shift) {
+        if (shift.count() instanceof Immediate) {
+            binary(code, new Binary(shift.opcode(), shift.destination(), shift.value(), shift.count(), false));
+            return;
+        }
+        Register dest = shift.destination();
+        Register target = dest instanceof PhysicalRegister && !ECX.equals(dest) ? dest : SCRATCH;
+        // the count is copied first, the value may overwrite it in the target
+        if (!ECX.equals(shift.count())) {
+            code.add(operation("movl", shift.count(), ECX));
+        }
+        if (!shift.value().equals(target)) {
+            code.add(operation("movl", shift.value(), target));
+        }
+        code.add(operation(shift.opcode(), CL, target));
+        if (target != dest) {
+            code.add(operation("movl", SCRATCH, dest));
+        }
+    }
+
+    /// Emits `idivl`, which takes the dividend in `%eax` and produces the quotient in `%eax`
+    /// and the remainder in `%edx`. The allocator keeps all other values out of both registers,
+    /// see [X86RegisterConstraints], so only the operand and the result may need a move.
+    ///
+    /// A constant divisor other than `0`, `-1` and `Integer.MIN_VALUE` needs no `idivl`, see [#constantDivision].
+    /// The other three keep it, so dividing by zero and `Integer.MIN_VALUE / -1` still trap.
+    private static void division(List<Instruction> code, Divide divide) {
+        Register result = divide.remainder() ? EDX : EAX;
+        boolean constantDivisor = divide.divisor() instanceof Immediate(int divisor)
+            && divisor != 0 && divisor != -1 && divisor != Integer.MIN_VALUE;
+        if (constantDivisor && divide.dividend() instanceof Immediate(int dividend)) {
+            int divisor = ((Immediate) divide.divisor()).value();
+            int value = divide.remainder() ? dividend % divisor : dividend / divisor;
+            code.add(operation("movl", new Immediate(value), divide.destination()));
+            return;
+        }
+        if (!EAX.equals(divide.dividend())) {
+            code.add(operation("movl", divide.dividend(), EAX));
+        }
+        if (constantDivisor) {
+            constantDivision(code, ((Immediate) divide.divisor()).value(), divide.remainder());
+        } else {
+            Register divisor = inRegister(code, divide.divisor());
+            code.add(operation("cltd"));
+            code.add(operation("idivl", divisor));
+        }
+        if (!result.equals(divide.destination())) {
+            code.add(operation("movl", result, divide.destination()));
+        }
+    }
+
+    /// Divides `%eax` by a constant the way `idivl` does, leaving the quotient in `%eax` or the remainder
+    /// in `%edx`. A power of two is a shift, corrected by adding `|divisor| - 1` to a negative dividend
+    /// first so the quotient is rounded towards zero. Any other divisor multiplies by its [DivisionMagic].
+    /// The remainder is `x - (x / d) * d` either way, with the dividend kept in the scratch register.
+    private static void constantDivision(List<Instruction> code, int divisor, boolean remainder) {
+        int absolute = Math.abs(divisor);
+        if (absolute == 1) {
+            // x / 1 is x itself
+            if (remainder) {
+                code.add(operation("movl", new Immediate(0), EDX));
             }
-            case BranchNode branch -> {
-                Register condReg = registers.get(branch.condition());
-                
-                // In BranchNode: predecessors[0] is condition, predecessors[1] is trueBlock, predecessors[2] is falseBlock
-                Block trueBlock = null;
-                Block falseBlock = null;
-                
-                if (branch.predecessors().size() >= 3) {
-                    trueBlock = (Block) branch.predecessors().get(1);  // Second predecessor is true block
-                    falseBlock = (Block) branch.predecessors().get(2); // Third predecessor is false block
-                }
-                
-                // Generate proper if-statement structure: if condition is false, jump over then-block
-                if (condReg != null && trueBlock != null && falseBlock != null) {
-                    builder.append("    cmpl $0, ").append(condReg).append("\n");
-                    builder.append("    je .L").append(falseBlock.hashCode()).append("\n");   // Jump to false block if condition is zero
-                    
-                    // Fall through to true block (then-block)
-                    scan(trueBlock, visited, builder, registers);
-                    
-                    // Generate false block (which typically merges with code after if-statement)
-                    scan(falseBlock, visited, builder, registers);
-                } else if (trueBlock != null) {
-                    // Fallback: just jump to true block
-                    builder.append("    jmp .L").append(trueBlock.hashCode()).append("\n");
-                    scan(trueBlock, visited, builder, registers);
-                }
+            return;
+        }
+        if ((absolute & (absolute - 1)) == 0) {
+            int shift = Integer.numberOfTrailingZeros(absolute);
+            // the bias is |divisor| - 1 for a negative dividend and 0 otherwise
+            code.add(operation("movl", EAX, SCRATCH));
+            if (shift > 1) {
+                code.add(operation("sarl", new Immediate(31), SCRATCH));
             }
-            case JumpNode jump -> {
-                Block targetBlock = (Block) jump.predecessors().get(0);
-                builder.append("    jmp .L").append(targetBlock.hashCode()).append("\n");
-                scan(targetBlock, visited, builder, registers);
+            code.add(operation("shrl", new Immediate(32 - shift), SCRATCH));
+            code.add(operation("addl", SCRATCH, EAX));
+            if (remainder) {
+                // (x + bias) mod 2^shift - bias, which has the sign of x just like idivl
+                code.add(operation("andl", new Immediate(absolute - 1), EAX));
+                code.add(operation("subl", SCRATCH, EAX));
+                code.add(operation("movl", EAX, EDX));
+                return;
             }
-            case Block _ -> {
-                // Block 在上面已经处理了
+            code.add(operation("sarl", new Immediate(shift), EAX));
+            if (divisor < 0) {
+                code.add(operation("negl", EAX));
             }
+            return;
+        }
+        DivisionMagic magic = DivisionMagic.of(divisor);
+        code.add(operation("movl", EAX, SCRATCH));
+        code.add(operation("movl", new Immediate(magic.multiplier()), EDX));
+        // the one operand form multiplies %eax into %edx:%eax
+        code.add(operation("imull", EDX));
+        if (divisor > 0 && magic.multiplier() < 0) {
+            code.add(operation("addl", SCRATCH, EDX));
+        } else if (divisor < 0 && magic.multiplier() > 0) {
+            code.add(operation("subl", SCRATCH, EDX));
+        }
+        if (magic.shift() > 0) {
+            code.add(operation("sarl", new Immediate(magic.shift()), EDX));
+        }
+        // add one to a negative quotient to round it towards zero
+        code.add(operation("movl", EDX, EAX));
+        code.add(operation("shrl", new Immediate(31), EAX));
+        code.add(operation("addl", EDX, EAX));
+        if (remainder) {
+            code.add(operation("imull", new Immediate(divisor), EAX, EAX));
+            code.add(operation("movl", SCRATCH, EDX));
+            code.add(operation("subl", EAX, EDX));
         }
     }
 
-    private static void binary(
-            StringBuilder builder,
-            Map<Node, Register> registers,
-            BinaryOperationNode node,
-            String opcode
-    ) {
-        Register dest = registers.get(node);
-        Register lhs = registers.get(predecessorSkipProj(node, BinaryOperationNode.LEFT));
-        Register rhs = registers.get(predecessorSkipProj(node, BinaryOperationNode.RIGHT));
+    /// Instructions that take a single operand cannot encode an immediate,
+    /// so a constant is loaded into the scratch register first.
+    private static Register inRegister(List<Instruction> code, Register operand) {
+        if (operand instanceof Immediate) {
+            code.add(operation("movl", operand, SCRATCH));
+            return SCRATCH;
+        }
+        return operand;
+    }
+
+    /// Emits `cmpl` for `lhs - rhs`, which only accepts an immediate as its first (AT&T) operand.
+    /// A constant `lhs` is compared the other way around instead, unless `rhs` is constant as well.
+    /// {@return the condition code for `lhs condition rhs` after the emitted comparison}
+    private static Condition compare(List<Instruction> code, Condition condition, Register lhs, Register rhs) {
+        if (lhs instanceof Immediate && !(rhs instanceof Immediate)) {
+            code.add(operation("cmpl", lhs, rhs));
+            return condition.mirror();
+        }
+        Register left = lhs;
+        if (lhs instanceof Immediate || lhs instanceof SpillRegister && rhs instanceof SpillRegister) {
+            left = SCRATCH;
+            code.add(operation("movl", lhs, SCRATCH));
+        }
+        code.add(operation("cmpl", rhs, left));
+        return condition;
+    }
+
+    /// `setcc` only writes the low byte of a register, which is then zero extended to the whole register.
+    /// The destination may be one of the compared operands, so it can't be cleared before the `cmpl`.
+    private static void setCondition(List<Instruction> code, SetCondition set) {
+        Register dest = set.destination();
+        if (set.left() instanceof Immediate(int left) && set.right() instanceof Immediate(int right)) {
+            code.add(operation("movl", new Immediate(set.condition().holds(left, right) ? 1 : 0), dest));
+            return;
+        }
+        Register target = dest instanceof SpillRegister ? SCRATCH : dest;
+        Condition condition = compare(code, set.condition(), set.left(), set.right());
+        Register low = lowByte((PhysicalRegister) target);
+        code.add(operation("set" + condition.suffix(), low));
+        code.add(operation("movzbl", low, target));
+        if (target != dest) {
+            code.add(operation("movl", SCRATCH, dest));
+        }
+    }
+
+    /// `cmovcc` only moves into a register and can't take an immediate, so one of the values is loaded into
+    /// the destination first and the other one is moved over it if the condition holds. As `movl` keeps the
+    /// flags, the loads come after the `cmpl`, when the operands of the comparison are no longer needed.
+    private static void conditionalMove(List<Instruction> code, ConditionalMove move) {
+        Register dest = move.destination();
+        Register onTrue = move.trueValue();
+        Register onFalse = move.falseValue();
+        if (onTrue instanceof Immediate(int trueValue) && onFalse instanceof Immediate(int falseValue)) {
+            selectConstant(code, move, trueValue, falseValue);
+            return;
+        }
+        Register target = dest instanceof SpillRegister ? SCRATCH : dest;
+        Condition condition = compare(code, move.condition(), move.left(), move.right());
+        // the value already in the destination, or the immediate, is the one that is not moved conditionally
+        if (target.equals(onTrue) || onTrue instanceof Immediate && !target.equals(onFalse)) {
+            Register swap = onTrue;
+            onTrue = onFalse;
+            onFalse = swap;
+            condition = condition.negate();
+        }
+        if (!onFalse.equals(target)) {
+            code.add(operation("movl", onFalse, target));
+        }
+        if (onTrue instanceof Immediate) {
+            code.add(operation("movl", onTrue, SCRATCH));
+            onTrue = SCRATCH;
+        }
+        code.add(operation("cmov" + condition.suffix() + "l", onTrue, target));
+        if (target != dest) {
+            code.add(operation("movl", SCRATCH, dest));
+        }
+    }
+
+    /// Selects between two constants without a second scratch register as
+    /// `falseValue + (trueValue - falseValue) * (left condition right)`.
+    private static void selectConstant(List<Instruction> code, ConditionalMove move, int trueValue, int falseValue) {
+        Register dest = move.destination();
+        Register target = dest instanceof SpillRegister ? SCRATCH : dest;
+        setCondition(code, new SetCondition(move.condition(), target, move.left(), move.right()));
+        int difference = trueValue - falseValue;
+        if (difference != 1) {
+            code.add(operation("imull", new Immediate(difference), target, target));
+        }
+        if (falseValue != 0) {
+            code.add(operation("addl", new Immediate(falseValue), target));
+        }
+        if (target != dest) {
+            code.add(operation("movl", SCRATCH, dest));
+        }
+    }
+
+    /// {@return the register naming the lowest byte of the given 32 bit register}
+    private static Register lowByte(PhysicalRegister register) {
+        String name = register.name();
+        String low = switch (name) {
+            case "%eax", "%ebx", "%ecx", "%edx" -> "%" + name.charAt(2) + "l";
+            case "%esi", "%edi" -> name.replace("%e", "%") + "l";
+            default -> name.substring(0, name.length() - 1) + "b";
+        };
+        return new PhysicalRegister(low, register.id());
+    }
+
+    /// Emits a two address instruction `dest = lhs opcode rhs`.
+    /// A constant operand is encoded as an immediate. For commutative operations the operands are
+    /// swapped if that puts a constant on the right or lets the instruction work on `dest` directly.
+    /// An addition into a third register becomes a `leal`, which needs no copy of `lhs` first.
+    private static void binary(List<Instruction> code, Binary binary) {
+        String opcode = binary.opcode();
+        Register dest = binary.destination();
+        Register lhs = binary.left();
+        Register rhs = binary.right();
+        boolean constantLeft = lhs instanceof Immediate && !(rhs instanceof Immediate);
+        boolean rightIsDest = dest.equals(rhs) && !dest.equals(lhs);
+        if (binary.commutative() && (constantLeft || rightIsDest)) {
+            Register swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
 
         // 处理目标寄存器与源寄存器冲突的情况
-        if (dest.equals(rhs)) {
+        if (dest instanceof SpillRegister) {
+            // at most one operand may be in memory, so a spilled result is computed in the scratch register
+            code.add(operation("movl", lhs, SCRATCH));
+            code.add(operation(opcode, rhs, SCRATCH));
+            code.add(operation("movl", SCRATCH, dest));
+        } else if (opcode.equals("addl") && !dest.equals(lhs) && !dest.equals(rhs)
+            && lhs instanceof PhysicalRegister && !(rhs instanceof SpillRegister)) {
+            Address sum = rhs instanceof Immediate(int value)
+                ? new Address(lhs, null, 1, value)
+                : new Address(lhs, rhs, 1, 0);
+            code.add(operation("leal", sum, dest));
+        } else if (dest.equals(rhs) && opcode.equals("subl") && lhs instanceof Immediate) {
+            // c - x is computed in place as -x + c
+            code.add(operation("negl", dest));
+            code.add(operation("addl", lhs, dest));
+        } else if (dest.equals(rhs)) {
             // 如果目标寄存器与右操作数相同，使用临时寄存器
-            builder.append("    movl ").append(rhs).append(", %eax\n");
-            builder.append("    movl ").append(lhs).append(", ").append(dest).append("\n");
-            builder.append("    ").append(opcode).append(" %eax, ").append(dest).append("\n");
+            code.add(operation("movl", rhs, SCRATCH));
+            move(code, lhs, dest);
+            code.add(operation(opcode, SCRATCH, dest));
         } else if (dest.equals(lhs)) {
             // 如果目标寄存器与左操作数相同，直接操作
-            builder.append("    ").append(opcode).append(" ").append(rhs).append(", ").append(dest).append("\n");
+            code.add(operation(opcode, rhs, dest));
         } else {
             // 如果目标寄存器与两个操作数都不同，先移动左操作数
-            builder.append("    movl ").append(lhs).append(", ").append(dest).append("\n");
-            builder.append("    ").append(opcode).append(" ").append(rhs).append(", ").append(dest).append("\n");
+            code.add(operation("movl", lhs, dest));
+            code.add(operation(opcode, rhs, dest));
         }
     }
 
-    /**
-     * Handle multiplication with special case optimization for powers of 2.
-     * When multiplying by powers of 2, use shift instructions for better semantics.
-     */
-    private static void handleMultiplication(
-            StringBuilder builder,
-            Map<Node, Register> registers,
-            MulNode mul
-    ) {
-        Register dest = registers.get(mul);
-        Register lhs = registers.get(predecessorSkipProj(mul, BinaryOperationNode.LEFT));
-        Register rhs = registers.get(predecessorSkipProj(mul, BinaryOperationNode.RIGHT));
-        
-        // Check if we're multiplying by a power of 2 (which likely came from shift operation)
-        Node leftNode = predecessorSkipProj(mul, BinaryOperationNode.LEFT);
-        Node rightNode = predecessorSkipProj(mul, BinaryOperationNode.RIGHT);
-        
-        // Check if right operand is a constant power of 2
-        if (rightNode instanceof ConstIntNode constNode) {
-            int value = constNode.value();
-            int shiftAmount = isPowerOfTwo(value);
-            if (shiftAmount >= 0) {
-                // Generate shift instruction instead of multiplication
-                if (dest.equals(lhs)) {
-                    // Destination is the same as left operand
-                    builder.append("    sall $").append(shiftAmount).append(", ").append(dest).append("\n");
-                } else {
-                    // Move left operand to destination, then shift
-                    builder.append("    movl ").append(lhs).append(", ").append(dest).append("\n");
-                    builder.append("    sall $").append(shiftAmount).append(", ").append(dest).append("\n");
-                }
-                return;
-            }
+    /// imull has a three operand form that reads the source from anywhere and writes a register,
+    /// so no move is needed.
+    private static void multiplyImmediate(List<Instruction> code, MultiplyImmediate multiply) {
+        Register dest = multiply.destination();
+        Register target = dest instanceof SpillRegister ? SCRATCH : dest;
+        code.add(operation("imull", multiply.factor(), multiply.source(), target));
+        if (target != dest) {
+            code.add(operation("movl", SCRATCH, dest));
         }
-        
-        // Check if left operand is a constant power of 2
-        if (leftNode instanceof ConstIntNode constNode) {
-            int value = constNode.value();
-            int shiftAmount = isPowerOfTwo(value);
-            if (shiftAmount >= 0) {
-                // Generate shift instruction instead of multiplication
-                if (dest.equals(rhs)) {
-                    // Destination is the same as right operand
-                    builder.append("    sall $").append(shiftAmount).append(", ").append(dest).append("\n");
-                } else {
-                    // Move right operand to destination, then shift
-                    builder.append("    movl ").append(rhs).append(", ").append(dest).append("\n");
-                    builder.append("    sall $").append(shiftAmount).append(", ").append(dest).append("\n");
-                }
-                return;
+    }
+
+    /// `leal` needs its base and index in registers and writes a register. An addition with the
+    /// result in one of the two registers is shorter as `addl`. If an operand is spilled,
+    /// the address is computed step by step in the scratch register instead.
+    private static void loadAddress(List<Instruction> code, LoadAddress load) {
+        Register dest = load.destination();
+        Address address = load.address();
+        Register base = address.base();
+        Register index = address.index();
+        boolean inRegisters = (base == null || base instanceof PhysicalRegister)
+            && (index == null || index instanceof PhysicalRegister);
+        if (base == null && index == null) {
+            // a sum of constants only
+            code.add(operation("movl", new Immediate(address.displacement()), dest));
+        } else if (inRegisters && dest instanceof PhysicalRegister) {
+            if (address.scale() == 1 && address.displacement() == 0 && base != null && index != null
+                && (dest.equals(base) || dest.equals(index))) {
+                code.add(operation("addl", dest.equals(base) ? index : base, dest));
+            } else if (index == null && dest.equals(base)) {
+                code.add(operation("addl", new Immediate(address.displacement()), dest));
+            } else {
+                code.add(operation("leal", address, dest));
+            }
+        } else if (inRegisters) {
+            code.add(operation("leal", address, SCRATCH));
+            code.add(operation("movl", SCRATCH, dest));
+        } else {
+            code.add(operation("movl", index != null ? index : base, SCRATCH));
+            if (index != null && address.scale() > 1) {
+                code.add(operation("sall", new Immediate(Integer.numberOfTrailingZeros(address.scale())), SCRATCH));
             }
+            if (index != null && base != null) {
+                code.add(operation("addl", base, SCRATCH));
+            }
+            if (address.displacement() != 0) {
+                code.add(operation("addl", new Immediate(address.displacement()), SCRATCH));
+            }
+            code.add(operation("movl", SCRATCH, dest));
         }
-        
-        // Fall back to regular multiplication for non-power-of-2 cases
-        binary(builder, registers, mul, "imull");
-    }
-    
-    /**
-     * Check if a value is a power of 2 and return the shift amount.
-     * Returns -1 if not a power of 2.
-     */
-    private static int isPowerOfTwo(int value) {
-        if (value <= 0) {
-            return -1;
-        }
-        
-        // Check if value is a power of 2: (value & (value - 1)) == 0
-        if ((value & (value - 1)) != 0) {
-            return -1;
-        }
-        
-        // Calculate the shift amount
-        int shiftAmount = 0;
-        int temp = value;
-        while (temp > 1) {
-            temp >>= 1;
-            shiftAmount++;
-        }
-        
-        return shiftAmount;
     }
 
     // Before --Enzo
@@ -0,0 +1,81 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
+
+/// A condition code of the x86 flags after `cmpl right, left`, as used in the suffix of `jcc` and `setcc`.
+/// The orderings compare signed integers.
+enum Condition {
+    EQUAL("e"),
+    NOT_EQUAL("ne"),
+    LESS("l"),
+    LESS_EQUAL("le"),
+    GREATER("g"),
+    GREATER_EQUAL("ge");
+
+    private final String suffix;
+
+    Condition(String suffix) {
+        this.suffix = suffix;
+    }
+
+    String suffix() {
+        return this.suffix;
+    }
+
+    /// {@return the condition with the given `jcc` suffix, or `null` if there is none}
+    static Condition ofSuffix(String suffix) {
+        for (Condition condition : values()) {
+            if (condition.suffix.equals(suffix)) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    /// {@return the condition for the relation of a [CompareNode]}
+    static Condition of(CompareNode.Relation relation) {
+        return switch (relation) {
+            case EQUAL -> EQUAL;
+            case NOT_EQUAL -> NOT_EQUAL;
+            case LESS -> LESS;
+            case LESS_EQUAL -> LESS_EQUAL;
+            case GREATER -> GREATER;
+            case GREATER_EQUAL -> GREATER_EQUAL;
+        };
+    }
+
+    /// {@return the condition that holds exactly if this one does not}
+    Condition negate() {
+        return switch (this) {
+            case EQUAL -> NOT_EQUAL;
+            case NOT_EQUAL -> EQUAL;
+            case LESS -> GREATER_EQUAL;
+            case LESS_EQUAL -> GREATER;
+            case GREATER -> LESS_EQUAL;
+            case GREATER_EQUAL -> LESS;
+        };
+    }
+
+    /// {@return the condition that holds for `right, left` exactly if this one holds for `left, right`}
+    Condition mirror() {
+        return switch (this) {
+            case EQUAL, NOT_EQUAL -> this;
+            case LESS -> GREATER;
+            case LESS_EQUAL -> GREATER_EQUAL;
+            case GREATER -> LESS;
+            case GREATER_EQUAL -> LESS_EQUAL;
+        };
+    }
+
+    /// {@return whether the condition holds for the two values}
+    boolean holds(int left, int right) {
+        return switch (this) {
+            case EQUAL -> left == right;
+            case NOT_EQUAL -> left != right;
+            case LESS -> left < right;
+            case LESS_EQUAL -> left <= right;
+            case GREATER -> left > right;
+            case GREATER_EQUAL -> left >= right;
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+/// The magic number that turns a signed 32 bit division by a constant into a multiplication,
+/// as described by Granlund and Montgomery in
+/// [`Division by Invariant Integers using Multiplication`](https://dl.acm.org/doi/10.1145/178243.178249).
+///
+/// For a divisor `d` with `2 <= |d| < 2^31`, the quotient `x / d`, rounded towards zero, is
+/// `q + (q >>> 31)` with `q = (hi(x * multiplier) + correction) >> shift`, where `hi` takes the upper
+/// 32 bits of the signed 64 bit product. The correction is `x` if `d > 0` but the multiplier is
+/// negative, `-x` if `d < 0` but the multiplier is positive, and `0` otherwise.
+/// The search for the smallest multiplier follows Hacker's Delight, section 10-6.
+record DivisionMagic(int multiplier, int shift) {
+
+    /// {@return the magic number for the divisor}
+    /// @throws IllegalArgumentException if `|divisor| < 2` or the divisor is `Integer.MIN_VALUE`
+    static DivisionMagic of(int divisor) {
+        if (divisor >= -1 && divisor <= 1 || divisor == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("no magic number for " + divisor);
+        }
+        // all values are unsigned 32 bit numbers, held in a long
+        final long twoTo31 = 1L << 31;
+        long absolute = Math.abs((long) divisor);
+        long t = twoTo31 + (divisor >>> 31);
+        long absoluteNc = t - 1 - t % absolute;
+        int p = 31;
+        long q1 = twoTo31 / absoluteNc;
+        long r1 = twoTo31 - q1 * absoluteNc;
+        long q2 = twoTo31 / absolute;
+        long r2 = twoTo31 - q2 * absolute;
+        long delta;
+        do {
+            p++;
+            q1 *= 2;
+            r1 *= 2;
+            if (r1 >= absoluteNc) {
+                q1++;
+                r1 -= absoluteNc;
+            }
+            q2 *= 2;
+            r2 *= 2;
+            if (r2 >= absolute) {
+                q2++;
+                r2 -= absolute;
+            }
+            delta = absolute - r2;
+        } while (q1 < delta || q1 == delta && r1 == 0);
+        int multiplier = (int) (q2 + 1);
+        return new DivisionMagic(divisor < 0 ? -multiplier : multiplier, p - 32);
+    }
+}
@@ -0,0 +1,58 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/// Writes machine code as a static x86-64 Linux executable in the ELF64 format.
+///
+/// The file has no sections, only the ELF header and a single readable and executable `PT_LOAD`
+/// segment that maps the whole file, headers included, to [#BASE_ADDRESS]. The code follows directly
+/// after the headers.
+final class ElfWriter {
+    /// The address the file is loaded at, the default of the GNU linker.
+    static final long BASE_ADDRESS = 0x400000;
+    private static final int ELF_HEADER_SIZE = 64;
+    private static final int PROGRAM_HEADER_SIZE = 56;
+    private static final int CODE_OFFSET = ELF_HEADER_SIZE + PROGRAM_HEADER_SIZE;
+
+    private ElfWriter() {
+
+    }
+
+    /// Writes the executable.
+    /// @param entry the offset of the entry point from the start of the code
+    static void write(byte[] code, int entry, OutputStream out) throws IOException {
+        long fileSize = CODE_OFFSET + code.length;
+        ByteBuffer header = ByteBuffer.allocate(CODE_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        // e_ident: magic, 64 bit, little endian, version 1, System V ABI
+        header.put(new byte[] {0x7F, 'E', 'L', 'F', 2, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        header.putShort((short) 2); // e_type: ET_EXEC
+        header.putShort((short) 62); // e_machine: EM_X86_64
+        header.putInt(1); // e_version
+        header.putLong(BASE_ADDRESS + CODE_OFFSET + entry); // e_entry
+        header.putLong(ELF_HEADER_SIZE); // e_phoff
+        header.putLong(0); // e_shoff: no section headers
+        header.putInt(0); // e_flags
+        header.putShort((short) ELF_HEADER_SIZE); // e_ehsize
+        header.putShort((short) PROGRAM_HEADER_SIZE); // e_phentsize
+        header.putShort((short) 1); // e_phnum
+        header.putShort((short) 64); // e_shentsize
+        header.putShort((short) 0); // e_shnum
+        header.putShort((short) 0); // e_shstrndx
+
+        header.putInt(1); // p_type: PT_LOAD
+        header.putInt(0x4 | 0x1); // p_flags: PF_R | PF_X
+        header.putLong(0); // p_offset
+        header.putLong(BASE_ADDRESS); // p_vaddr
+        header.putLong(BASE_ADDRESS); // p_paddr
+        header.putLong(fileSize); // p_filesz
+        header.putLong(fileSize); // p_memsz
+        header.putLong(0x1000); // p_align
+
+        out.write(header.array());
+        out.write(code);
+        out.flush();
+    }
+}
@@ -0,0 +1,11 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+
+/// A constant operand. Constants are not allocated, but encoded into every instruction that uses them.
+record Immediate(int value) implements Register {
+    @Override
+    public String toString() {
+        return "$" + value;
+    }
+}
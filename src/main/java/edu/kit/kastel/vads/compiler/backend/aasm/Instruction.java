@@ -0,0 +1,27 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+
+import java.util.List;
+
+/// A single x86 instruction with physical operands, or a label in between them.
+///
+/// Operands are in AT&T order, so the destination comes last. They are [Register]s, which
+/// include stack slots, [immediates][Immediate] and [addresses][Address].
+/// [AssemblyPrinter] turns instructions into assembler text.
+sealed interface Instruction {
+
+    static Instruction operation(String mnemonic, Register... operands) {
+        return new Operation(mnemonic, List.of(operands));
+    }
+
+    record Label(String name) implements Instruction {
+    }
+
+    record Operation(String mnemonic, List<Register> operands) implements Instruction {
+    }
+
+    /// An unconditional `jmp`, a conditional `jcc` or a `call` to a label.
+    record Jump(String mnemonic, String target) implements Instruction {
+    }
+}
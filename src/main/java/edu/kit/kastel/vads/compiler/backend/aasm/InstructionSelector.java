@@ -0,0 +1,339 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Binary;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.CompareAndBranch;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.ConditionalMove;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Divide;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Jump;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.LoadAddress;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.MultiplyImmediate;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Return;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.SetCondition;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Shift;
+import edu.kit.kastel.vads.compiler.backend.aasm.MachineInstruction.Unary;
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.AddNode;
+import edu.kit.kastel.vads.compiler.ir.node.AndNode;
+import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.BranchNode;
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
+import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.JumpNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
+import edu.kit.kastel.vads.compiler.ir.node.MulNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.OrNode;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
+import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
+import edu.kit.kastel.vads.compiler.ir.node.SarNode;
+import edu.kit.kastel.vads.compiler.ir.node.SelectNode;
+import edu.kit.kastel.vads.compiler.ir.node.ShlNode;
+import edu.kit.kastel.vads.compiler.ir.node.StartNode;
+import edu.kit.kastel.vads.compiler.ir.node.SubNode;
+import edu.kit.kastel.vads.compiler.ir.node.XorNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
+
+/// Chooses [MachineInstruction]s for the scheduled nodes of a [ControlFlowGraph] by maximal munch.
+///
+/// Each block is walked from its terminator backwards, so a node is visited before its operands.
+/// Every node that is not covered yet becomes the root of the largest tile matching there.
+/// An operand is covered by the tile of its user, or _folded_, if that user is its only one, it is
+/// in the same block and it fits into the tile. Folded nodes need neither a register nor
+/// instructions of their own, see [edu.kit.kastel.vads.compiler.backend.regalloc.RegisterConstraints#isFolded].
+///
+/// The tiles are:
+/// - additions of constants, other values and at most one value scaled by `2`, `4` or `8`,
+///   nested to any depth, become a single `leal`; `x * 3`, `x * 5` and `x * 9` count as `x + x * s`
+/// - multiplications by `3`, `5` and `9` become `leal (x,x,s)`, by powers of two a shift and by
+///   any other constant the three operand `imull`
+/// - a branch on a comparison becomes a `cmpl` and the matching `jcc`, only a comparison whose result
+///   is needed as a value is computed with `setcc`
+/// - a branch on a subtraction compares its operands instead of computing the difference
+/// - a select becomes a `cmovcc`, with the comparison of its condition folded in like for a branch
+/// - shifts by a constant count encode the count, masked to five bits, as an immediate
+/// - everything else maps to one instruction
+final class InstructionSelector {
+    private final ControlFlowGraph cfg;
+    private final BitSet folded = new BitSet();
+    private final List<List<MachineInstruction>> instructions = new ArrayList<>();
+
+    InstructionSelector(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        for (Block block : cfg.blocks()) {
+            this.instructions.add(select(block));
+        }
+    }
+
+    /// {@return the instructions selected for the block, in execution order}
+    List<MachineInstruction> instructions(Block block) {
+        return Collections.unmodifiableList(this.instructions.get(this.cfg.index(block)));
+    }
+
+    /// {@return the ids of all nodes that were folded into the tile of their user}
+    BitSet folded() {
+        return (BitSet) this.folded.clone();
+    }
+
+    private List<MachineInstruction> select(Block block) {
+        List<MachineInstruction> selected = new ArrayList<>();
+        for (Node node : this.cfg.nodes(block).reversed()) {
+            if (this.folded.get(node.id())) {
+                continue;
+            }
+            MachineInstruction instruction = selectTile(node);
+            if (instruction != null) {
+                selected.add(instruction);
+            }
+        }
+        return selected.reversed();
+    }
+
+    private MachineInstruction selectTile(Node node) {
+        return switch (node) {
+            case AddNode add -> {
+                LoadAddress address = selectAddress(add);
+                yield address != null ? address : binary(add, "addl", true);
+            }
+            case SubNode sub -> binary(sub, "subl", false);
+            case MulNode mul -> selectMultiplication(mul);
+            case CompareNode compare -> new SetCondition(Condition.of(compare.relation()), register(compare),
+                operand(compare, CompareNode.LEFT), operand(compare, CompareNode.RIGHT));
+            case AndNode and -> binary(and, "andl", true);
+            case OrNode or -> binary(or, "orl", true);
+            case XorNode xor -> binary(xor, "xorl", true);
+            case NotNode not -> new Unary("notl", register(not), operand(not, NotNode.OPERAND));
+            case ShlNode shl -> shift(shl, "sall");
+            case SarNode sar -> shift(sar, "sarl");
+            case DivNode div -> new Divide(register(div), operand(div, DivNode.LEFT), operand(div, DivNode.RIGHT), false);
+            case ModNode mod -> new Divide(register(mod), operand(mod, ModNode.LEFT), operand(mod, ModNode.RIGHT), true);
+            case ReturnNode ret -> new Return(operand(ret, ReturnNode.RESULT));
+            case BranchNode branch -> selectBranch(branch);
+            case SelectNode select -> selectConditionalMove(select);
+            case JumpNode jump -> new Jump((Block) jump.predecessor(0));
+            case ConstIntNode _, Phi _, ProjNode _, StartNode _, Block _ -> null;
+        };
+    }
+
+    private MachineInstruction selectMultiplication(MulNode mul) {
+        Node left = predecessorSkipProj(mul, BinaryOperationNode.LEFT);
+        Node right = predecessorSkipProj(mul, BinaryOperationNode.RIGHT);
+        if (!(right instanceof ConstIntNode) && left instanceof ConstIntNode) {
+            Node swap = left;
+            left = right;
+            right = swap;
+        }
+        if (!(right instanceof ConstIntNode factor) || left instanceof ConstIntNode) {
+            return binary(mul, "imull", true);
+        }
+        int value = factor.value();
+        if (value > 0 && (value & (value - 1)) == 0) {
+            return new Binary("sall", register(mul), location(left), new Immediate(Integer.numberOfTrailingZeros(value)), false);
+        }
+        if (value == 3 || value == 5 || value == 9) {
+            Register source = location(left);
+            return new LoadAddress(register(mul), new Address(source, source, value - 1, 0));
+        }
+        return new MultiplyImmediate(register(mul), location(left), new Immediate(value));
+    }
+
+    private MachineInstruction selectBranch(BranchNode branch) {
+        Node condition = predecessorSkipProj(branch, 0);
+        Block trueTarget = (Block) branch.predecessor(1);
+        Block falseTarget = (Block) branch.predecessor(2);
+        if (condition instanceof CompareNode compare && isFoldable(compare, branch)) {
+            this.folded.set(compare.id());
+            return new CompareAndBranch(Condition.of(compare.relation()), operand(compare, CompareNode.LEFT),
+                operand(compare, CompareNode.RIGHT), trueTarget, falseTarget);
+        }
+        if (condition instanceof SubNode sub && isFoldable(sub, branch)) {
+            // the difference is zero exactly if the operands are equal
+            this.folded.set(sub.id());
+            return new CompareAndBranch(Condition.NOT_EQUAL, operand(sub, SubNode.LEFT), operand(sub, SubNode.RIGHT),
+                trueTarget, falseTarget);
+        }
+        return new CompareAndBranch(Condition.NOT_EQUAL, location(condition), new Immediate(0), trueTarget, falseTarget);
+    }
+
+    private MachineInstruction selectConditionalMove(SelectNode select) {
+        Node condition = predecessorSkipProj(select, SelectNode.CONDITION);
+        Register trueValue = operand(select, SelectNode.TRUE_VALUE);
+        Register falseValue = operand(select, SelectNode.FALSE_VALUE);
+        if (condition instanceof CompareNode compare && isFoldable(compare, select)) {
+            this.folded.set(compare.id());
+            return new ConditionalMove(Condition.of(compare.relation()), register(select),
+                operand(compare, CompareNode.LEFT), operand(compare, CompareNode.RIGHT), trueValue, falseValue);
+        }
+        return new ConditionalMove(Condition.NOT_EQUAL, register(select), location(condition), new Immediate(0),
+            trueValue, falseValue);
+    }
+
+    /// Matches a tree of additions, rooted at `add`, against `displacement(base, index, scale)`.
+    /// {@return the instruction computing the whole tree, or `null` if it does not fit into one
+    /// address or a plain `addl` is just as good}
+    private LoadAddress selectAddress(AddNode add) {
+        AddressTerms terms = new AddressTerms(add, true);
+        if (!terms.collect(add)) {
+            // the nested additions have too many terms, but the outermost one may still fit
+            terms = new AddressTerms(add, false);
+            if (!terms.collect(add)) {
+                return null;
+            }
+        }
+        boolean scaled = terms.index != null && terms.scale > 1;
+        boolean threeTerms = terms.base != null && terms.index != null && terms.displacement != 0;
+        if (terms.covered.isEmpty() && !scaled && !threeTerms) {
+            return null;
+        }
+        for (Node node : terms.covered) {
+            this.folded.set(node.id());
+        }
+        Register base = terms.base == null ? null : location(terms.base);
+        Register index = terms.index == null ? null : location(terms.index);
+        return new LoadAddress(register(add), new Address(base, index, terms.scale, terms.displacement));
+    }
+
+    /// The parts of an address collected while matching a tree of additions.
+    /// Nothing is folded until the whole tree matched.
+    private final class AddressTerms {
+        private final AddNode root;
+        private final boolean nested;
+        private final List<Node> covered = new ArrayList<>();
+        private Node base;
+        private Node index;
+        private int scale = 1;
+        private int displacement;
+
+        AddressTerms(AddNode root, boolean nested) {
+            this.root = root;
+            this.nested = nested;
+        }
+
+        boolean collect(Node node) {
+            return collect(node, this.root);
+        }
+
+        /// Collects the terms of `node`, which is an operand of `user` within the tree.
+        /// A nested node is only folded if `user` is its only user.
+        private boolean collect(Node node, Node user) {
+            if (this.covered.contains(node)) {
+                // a folded node has no register to fall back to
+                return false;
+            }
+            if (node instanceof ConstIntNode constant) {
+                this.displacement += constant.value();
+                return true;
+            }
+            if (node instanceof AddNode && (node == this.root || this.nested && isFoldable(node, user))) {
+                if (node != this.root) {
+                    this.covered.add(node);
+                }
+                return collect(predecessorSkipProj(node, BinaryOperationNode.LEFT), node)
+                    && collect(predecessorSkipProj(node, BinaryOperationNode.RIGHT), node);
+            }
+            if (node instanceof MulNode mul && this.index == null && isFoldable(mul, user)) {
+                Node left = predecessorSkipProj(mul, BinaryOperationNode.LEFT);
+                Node right = predecessorSkipProj(mul, BinaryOperationNode.RIGHT);
+                int factor = scaleOf(right, 0);
+                Node scaled = left;
+                if (factor == 0) {
+                    factor = scaleOf(left, 0);
+                    scaled = right;
+                }
+                if (factor != 0 && !(scaled instanceof ConstIntNode)) {
+                    this.covered.add(mul);
+                    this.index = scaled;
+                    this.scale = factor;
+                    return true;
+                }
+                // x * 3, x * 5 and x * 9 take both registers as x + x * s
+                factor = scaleOf(right, 1);
+                scaled = left;
+                if (factor == 0) {
+                    factor = scaleOf(left, 1);
+                    scaled = right;
+                }
+                if (factor != 0 && this.base == null && !(scaled instanceof ConstIntNode)) {
+                    this.covered.add(mul);
+                    this.base = scaled;
+                    this.index = scaled;
+                    this.scale = factor;
+                    return true;
+                }
+            }
+            if (this.base == null) {
+                this.base = node;
+            } else if (this.index == null) {
+                this.index = node;
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        /// {@return the scale `s` if the node is the constant `s + offset` for a scale of `2`, `4` or `8`, `0` otherwise}
+        private static int scaleOf(Node node, int offset) {
+            if (node instanceof ConstIntNode constant) {
+                int value = constant.value() - offset;
+                if (value == 2 || value == 4 || value == 8) {
+                    return value;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /// {@return whether the node can be computed as part of the tile rooted at `user`}
+    private boolean isFoldable(Node node, Node user) {
+        return (node instanceof AddNode || node instanceof SubNode || node instanceof MulNode
+            || node instanceof CompareNode)
+            && node.block() == user.block()
+            && !this.folded.get(node.id())
+            && isOnlyUser(node, user);
+    }
+
+    private static boolean isOnlyUser(Node node, Node user) {
+        List<Node> users = node.graph().successors(node);
+        return users.size() == 1 && users.getFirst() == user;
+    }
+
+    private static Shift shift(BinaryOperationNode node, String opcode) {
+        Register count = operand(node, BinaryOperationNode.RIGHT);
+        if (count instanceof Immediate(int value)) {
+            // the processor masks the count in %cl the same way
+            count = new Immediate(value & 31);
+        }
+        return new Shift(opcode, register(node), operand(node, BinaryOperationNode.LEFT), count);
+    }
+
+    private Binary binary(BinaryOperationNode node, String opcode, boolean commutative) {
+        return new Binary(opcode, register(node), operand(node, BinaryOperationNode.LEFT),
+            operand(node, BinaryOperationNode.RIGHT), commutative);
+    }
+
+    private static Register operand(Node node, int index) {
+        return location(predecessorSkipProj(node, index));
+    }
+
+    /// {@return the operand referring to the value of the node}
+    private static Register location(Node node) {
+        if (node instanceof ConstIntNode constant) {
+            return new Immediate(constant.value());
+        }
+        return register(node);
+    }
+
+    private static VirtualRegister register(Node node) {
+        return new VirtualRegister(node.id());
+    }
+}
@@ -0,0 +1,122 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+
+import java.util.function.UnaryOperator;
+
+/// An instruction chosen by the [InstructionSelector] for one or more nodes of the IR.
+///
+/// Machine instructions are selected before register allocation, so their operands are virtual:
+/// a value is referred to by the [VirtualRegister] with its node id, a constant is an [Immediate].
+/// Some of them do not map to a single x86 instruction yet. The code generator turns them into
+/// [Instruction]s once every value has its physical register, and picks the exact encoding then.
+sealed interface MachineInstruction {
+
+    /// {@return this instruction with every register operand replaced by its mapping}
+    /// This turns virtual operands into physical ones after register allocation.
+    MachineInstruction withRegisters(UnaryOperator<Register> mapping);
+
+    private static Address map(Address address, UnaryOperator<Register> mapping) {
+        return new Address(
+            address.base() == null ? null : mapping.apply(address.base()),
+            address.index() == null ? null : mapping.apply(address.index()),
+            address.scale(),
+            address.displacement()
+        );
+    }
+
+    /// `destination = left opcode right` for a two address instruction such as `addl`.
+    /// If the operation is commutative, the operands may be swapped.
+    record Binary(String opcode, Register destination, Register left, Register right, boolean commutative)
+        implements MachineInstruction {
+        @Override
+        public Binary withRegisters(UnaryOperator<Register> mapping) {
+            return new Binary(opcode, mapping.apply(destination), mapping.apply(left), mapping.apply(right), commutative);
+        }
+    }
+
+    /// `destination = opcode operand` for a one operand instruction such as `notl`.
+    record Unary(String opcode, Register destination, Register operand) implements MachineInstruction {
+        @Override
+        public Unary withRegisters(UnaryOperator<Register> mapping) {
+            return new Unary(opcode, mapping.apply(destination), mapping.apply(operand));
+        }
+    }
+
+    /// `destination = source * factor`, the three operand form of `imull`.
+    record MultiplyImmediate(Register destination, Register source, Immediate factor) implements MachineInstruction {
+        @Override
+        public MultiplyImmediate withRegisters(UnaryOperator<Register> mapping) {
+            return new MultiplyImmediate(mapping.apply(destination), mapping.apply(source), factor);
+        }
+    }
+
+    /// `destination = base + index * scale + displacement`, computed with a single `leal`.
+    record LoadAddress(Register destination, Address address) implements MachineInstruction {
+        @Override
+        public LoadAddress withRegisters(UnaryOperator<Register> mapping) {
+            return new LoadAddress(mapping.apply(destination), map(address, mapping));
+        }
+    }
+
+    /// `destination = value opcode count` for `sall` or `sarl`. Only the lowest five bits of the count are used.
+    record Shift(String opcode, Register destination, Register value, Register count) implements MachineInstruction {
+        @Override
+        public Shift withRegisters(UnaryOperator<Register> mapping) {
+            return new Shift(opcode, mapping.apply(destination), mapping.apply(value), mapping.apply(count));
+        }
+    }
+
+    /// `destination = dividend / divisor`, or the remainder of it, computed with `idivl`.
+    record Divide(Register destination, Register dividend, Register divisor, boolean remainder)
+        implements MachineInstruction {
+        @Override
+        public Divide withRegisters(UnaryOperator<Register> mapping) {
+            return new Divide(mapping.apply(destination), mapping.apply(dividend), mapping.apply(divisor), remainder);
+        }
+    }
+
+    /// Compares both operands and continues at `trueTarget` if `left condition right` holds,
+    /// at `falseTarget` otherwise.
+    record CompareAndBranch(Condition condition, Register left, Register right, Block trueTarget, Block falseTarget)
+        implements MachineInstruction {
+        @Override
+        public CompareAndBranch withRegisters(UnaryOperator<Register> mapping) {
+            return new CompareAndBranch(condition, mapping.apply(left), mapping.apply(right), trueTarget, falseTarget);
+        }
+    }
+
+    /// `destination = left condition right ? 1 : 0`, for a comparison whose result is kept as a value.
+    record SetCondition(Condition condition, Register destination, Register left, Register right)
+        implements MachineInstruction {
+        @Override
+        public SetCondition withRegisters(UnaryOperator<Register> mapping) {
+            return new SetCondition(condition, mapping.apply(destination), mapping.apply(left), mapping.apply(right));
+        }
+    }
+
+    /// `destination = left condition right ? trueValue : falseValue`, computed with `cmovcc` and no branch.
+    record ConditionalMove(Condition condition, Register destination, Register left, Register right,
+                           Register trueValue, Register falseValue) implements MachineInstruction {
+        @Override
+        public ConditionalMove withRegisters(UnaryOperator<Register> mapping) {
+            return new ConditionalMove(condition, mapping.apply(destination), mapping.apply(left), mapping.apply(right),
+                mapping.apply(trueValue), mapping.apply(falseValue));
+        }
+    }
+
+    record Jump(Block target) implements MachineInstruction {
+        @Override
+        public Jump withRegisters(UnaryOperator<Register> mapping) {
+            return this;
+        }
+    }
+
+    record Return(Register value) implements MachineInstruction {
+        @Override
+        public Return withRegisters(UnaryOperator<Register> mapping) {
+            return new Return(mapping.apply(value));
+        }
+    }
+}
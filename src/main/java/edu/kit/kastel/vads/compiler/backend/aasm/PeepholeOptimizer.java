@@ -0,0 +1,338 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Jump;
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Label;
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Operation;
+import edu.kit.kastel.vads.compiler.backend.regalloc.PhysicalRegister;
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import edu.kit.kastel.vads.compiler.backend.regalloc.SpillRegister;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Cleans up the [Instruction]s of a function by looking at a small window of neighbouring
+/// instructions at a time. Lowering emits code for each selected instruction on its own, which
+/// leaves behind copies and jumps that are only redundant in context.
+///
+/// The rules are applied until none of them matches anymore:
+/// - `movl a, a` is removed, and so is `movl b, a` right after `movl a, b`
+/// - a value that is copied right after it was computed and is not used otherwise is
+///   computed into the destination of the copy instead
+/// - copies and `leal`s into registers and stack slots that are never read again are removed
+/// - a jump to a label that only jumps on is sent to the final target instead
+/// - a `jmp` to the next instruction is removed, and a `jcc` over a `jmp` becomes the opposite `jcc`
+/// - instructions after a `jmp` or `ret` that no jump leads to are removed
+///
+/// Whether a value is read again is found by a liveness analysis over the instructions.
+/// Local labels start with `.L`, all other labels are entry points and always kept.
+final class PeepholeOptimizer {
+    private static final Register EAX = new PhysicalRegister("%eax", 0);
+    private static final Register ECX = new PhysicalRegister("%ecx", 2);
+    private static final Register EDX = new PhysicalRegister("%edx", 3);
+
+    private PeepholeOptimizer() {
+
+    }
+
+    static List<Instruction> optimize(List<Instruction> code) {
+        List<Instruction> current = new ArrayList<>(code);
+        boolean changed = true;
+        while (changed) {
+            changed = threadJumps(current);
+            changed |= removeUnreachable(current);
+            changed |= removeJumpsToNext(current);
+            changed |= foldMoves(current);
+        }
+        return current;
+    }
+
+    /// Redirects jumps to a label that is directly followed by a `jmp` to the target of that `jmp`.
+    private static boolean threadJumps(List<Instruction> code) {
+        Map<String, String> forwards = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof Label(String name)) {
+                Instruction next = nextInstruction(code, i);
+                if (next instanceof Jump(String mnemonic, String target) && mnemonic.equals("jmp")) {
+                    forwards.put(name, target);
+                }
+            }
+        }
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof Jump(String mnemonic, String target)) {
+                String finalTarget = target;
+                Set<String> seen = new HashSet<>();
+                // a loop made of jumps only has no final target
+                while (forwards.containsKey(finalTarget) && seen.add(finalTarget)) {
+                    finalTarget = forwards.get(finalTarget);
+                }
+                if (!finalTarget.equals(target) && !seen.contains(finalTarget)) {
+                    code.set(i, new Jump(mnemonic, finalTarget));
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /// Removes local labels no jump leads to, and the instructions after a `jmp` or `ret`
+    /// up to the next label that is still a jump target.
+    private static boolean removeUnreachable(List<Instruction> code) {
+        Set<String> targets = new HashSet<>();
+        for (Instruction instruction : code) {
+            if (instruction instanceof Jump(String _, String target)) {
+                targets.add(target);
+            }
+        }
+        List<Instruction> result = new ArrayList<>(code.size());
+        boolean reachable = true;
+        for (Instruction instruction : code) {
+            if (instruction instanceof Label(String name)) {
+                if (targets.contains(name) || !isLocal(name)) {
+                    reachable = true;
+                    result.add(instruction);
+                }
+                continue;
+            }
+            if (reachable) {
+                result.add(instruction);
+                reachable = !endsFlow(instruction);
+            }
+        }
+        return replace(code, result);
+    }
+
+    /// Removes a `jmp` that only skips labels, and turns `jcc a; jmp b; a:` into `jncc b; a:`.
+    private static boolean removeJumpsToNext(List<Instruction> code) {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (!(code.get(i) instanceof Jump(String mnemonic, String target))) {
+                continue;
+            }
+            if (mnemonic.equals("jmp") && labelsAt(code, i + 1).contains(target)) {
+                code.remove(i);
+                i--;
+                changed = true;
+                continue;
+            }
+            Condition condition = Condition.ofSuffix(mnemonic.substring(1));
+            if (condition != null && i + 1 < code.size()
+                && code.get(i + 1) instanceof Jump(String next, String otherTarget) && next.equals("jmp")
+                && labelsAt(code, i + 2).contains(target)) {
+                code.set(i, new Jump("j" + condition.negate().suffix(), otherTarget));
+                code.remove(i + 1);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean foldMoves(List<Instruction> code) {
+        List<Set<Register>> liveAfter = liveAfter(code);
+        List<Instruction> result = new ArrayList<>(code.size());
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            if (instruction instanceof Operation(String mnemonic, List<Register> operands)) {
+                if (mnemonic.equals("movl") && operands.get(0).equals(operands.get(1))) {
+                    changed = true;
+                    continue;
+                }
+                if (isPure(mnemonic) && !liveAfter.get(i).contains(operands.getLast())) {
+                    changed = true;
+                    continue;
+                }
+                Instruction next = i + 1 < code.size() ? code.get(i + 1) : null;
+                if (isPure(mnemonic) && next instanceof Operation(String nextMnemonic, List<Register> nextOperands)
+                    && nextMnemonic.equals("movl") && nextOperands.get(0).equals(operands.getLast())) {
+                    Register source = operands.getLast();
+                    Register destination = nextOperands.get(1);
+                    if (mnemonic.equals("movl") && destination.equals(operands.get(0))) {
+                        // copied back to where it came from
+                        result.add(instruction);
+                        i++;
+                        changed = true;
+                        continue;
+                    }
+                    if (!liveAfter.get(i + 1).contains(source) && canWrite(mnemonic, operands, destination)) {
+                        List<Register> retargeted = new ArrayList<>(operands);
+                        retargeted.set(retargeted.size() - 1, destination);
+                        result.add(new Operation(mnemonic, List.copyOf(retargeted)));
+                        i++;
+                        changed = true;
+                        continue;
+                    }
+                }
+            }
+            result.add(instruction);
+        }
+        replace(code, result);
+        return changed;
+    }
+
+    /// {@return whether the instruction only writes its last operand and has no other effect}
+    private static boolean isPure(String mnemonic) {
+        return mnemonic.equals("movl") || mnemonic.equals("leal");
+    }
+
+    /// {@return whether the pure instruction can write `destination` instead of its last operand}
+    private static boolean canWrite(String mnemonic, List<Register> operands, Register destination) {
+        if (destination instanceof PhysicalRegister) {
+            return true;
+        }
+        // at most one memory operand, and leal always writes a register
+        return mnemonic.equals("movl") && !(operands.get(0) instanceof SpillRegister);
+    }
+
+    /// {@return for each instruction the registers and stack slots that may be read after it}
+    private static List<Set<Register>> liveAfter(List<Instruction> code) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof Label(String name)) {
+                labels.put(name, i);
+            }
+        }
+        List<Set<Register>> liveBefore = new ArrayList<>(code.size() + 1);
+        List<Set<Register>> liveAfter = new ArrayList<>(code.size());
+        for (int i = 0; i <= code.size(); i++) {
+            liveBefore.add(new HashSet<>());
+            if (i < code.size()) {
+                liveAfter.add(new HashSet<>());
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = code.size() - 1; i >= 0; i--) {
+                Instruction instruction = code.get(i);
+                Set<Register> after = liveAfter.get(i);
+                if (!endsFlow(instruction)) {
+                    after.addAll(liveBefore.get(i + 1));
+                }
+                if (instruction instanceof Jump(String _, String target) && labels.containsKey(target)) {
+                    after.addAll(liveBefore.get(labels.get(target)));
+                }
+                Set<Register> before = new HashSet<>(after);
+                if (instruction instanceof Operation operation) {
+                    before.removeAll(definitions(operation));
+                    before.addAll(uses(operation));
+                }
+                if (!before.equals(liveBefore.get(i))) {
+                    liveBefore.set(i, before);
+                    changed = true;
+                }
+            }
+        }
+        return liveAfter;
+    }
+
+    private static Set<Register> uses(Operation operation) {
+        List<Register> operands = operation.operands();
+        Set<Register> uses = new HashSet<>();
+        switch (operation.mnemonic()) {
+            case "movl", "movq", "leal", "movzbl" -> addUse(uses, operands.get(0));
+            case "popq", "sete", "setne", "setl", "setle", "setg", "setge" -> {
+            }
+            case "imull" -> {
+                addUses(uses, operands.size() == 3 ? operands.subList(1, 2) : operands);
+                if (operands.size() == 1) {
+                    // multiplies %eax into %edx:%eax
+                    uses.add(EAX);
+                }
+            }
+            case "sall", "sarl", "shrl" -> {
+                addUses(uses, operands);
+                if (!(operands.getFirst() instanceof Immediate)) {
+                    // the count is in %cl
+                    uses.add(ECX);
+                }
+            }
+            case "cltd" -> uses.add(EAX);
+            case "idivl" -> {
+                addUses(uses, operands);
+                uses.add(EAX);
+                uses.add(EDX);
+            }
+            case "ret" -> uses.add(EAX);
+            default -> addUses(uses, operands);
+        }
+        return uses;
+    }
+
+    private static Set<Register> definitions(Operation operation) {
+        List<Register> operands = operation.operands();
+        return switch (operation.mnemonic()) {
+            case "cmpl", "pushq", "ret", "leave" -> Set.of();
+            case "cltd" -> Set.of(EDX);
+            case "idivl" -> Set.of(EAX, EDX);
+            case "imull" -> operands.size() == 1 ? Set.of(EAX, EDX) : Set.of(operands.getLast());
+            default -> operands.isEmpty() ? Set.of() : Set.of(operands.getLast());
+        };
+    }
+
+    private static void addUses(Set<Register> uses, List<Register> operands) {
+        for (Register operand : operands) {
+            addUse(uses, operand);
+        }
+    }
+
+    private static void addUse(Set<Register> uses, Register operand) {
+        switch (operand) {
+            case Address address -> {
+                if (address.base() != null) {
+                    uses.add(address.base());
+                }
+                if (address.index() != null) {
+                    uses.add(address.index());
+                }
+            }
+            case Immediate _ -> {
+            }
+            default -> uses.add(operand);
+        }
+    }
+
+    private static boolean endsFlow(Instruction instruction) {
+        return switch (instruction) {
+            case Jump jump -> jump.mnemonic().equals("jmp");
+            case Operation operation -> operation.mnemonic().equals("ret");
+            case Label _ -> false;
+        };
+    }
+
+    private static boolean isLocal(String label) {
+        return label.startsWith(".L");
+    }
+
+    /// {@return the first instruction after the given index that is not a label}
+    private static Instruction nextInstruction(List<Instruction> code, int index) {
+        for (int i = index + 1; i < code.size(); i++) {
+            if (!(code.get(i) instanceof Label)) {
+                return code.get(i);
+            }
+        }
+        return null;
+    }
+
+    /// {@return the names of the labels directly at the given index}
+    private static Set<String> labelsAt(List<Instruction> code, int index) {
+        Set<String> names = new HashSet<>();
+        for (int i = index; i < code.size() && code.get(i) instanceof Label(String name); i++) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static boolean replace(List<Instruction> code, List<Instruction> result) {
+        if (result.equals(code)) {
+            return false;
+        }
+        code.clear();
+        code.addAll(result);
+        return true;
+    }
+}
@@ -0,0 +1,426 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Jump;
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Label;
+import edu.kit.kastel.vads.compiler.backend.aasm.Instruction.Operation;
+import edu.kit.kastel.vads.compiler.backend.regalloc.PhysicalRegister;
+import edu.kit.kastel.vads.compiler.backend.regalloc.Register;
+import edu.kit.kastel.vads.compiler.backend.regalloc.SpillRegister;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Encodes [Instruction]s into x86-64 machine code, covering exactly the instructions the code generator emits.
+///
+/// Code is added one function at a time. Jumps to labels of the same function start out in their
+/// two byte short form and are relaxed to the near form with a 32 bit displacement until every
+/// displacement fits, as sizes only ever grow. Labels not starting with `.L` are global symbols,
+/// jumps and calls to a symbol outside the function always use the near form and are resolved
+/// by [#code()] once all functions were added.
+///
+/// Memory operands are encoded with 64 bit address registers even though the assembler text
+/// names the 32 bit ones: `leal` only keeps the low 32 bits of the address, which are the same.
+final class X86Encoder {
+    private static final int RBP = 5;
+    private static final int RSP = 4;
+
+    private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private final List<Fixup> fixups = new ArrayList<>();
+
+    /// Appends the code of one function. Its `.L` labels are only visible inside of it.
+    void add(List<Instruction> function) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < function.size(); i++) {
+            if (function.get(i) instanceof Label(String name)) {
+                labels.put(name, i);
+            }
+        }
+        // everything but jumps has a fixed size and is encoded right away
+        List<byte[]> encoded = new ArrayList<>(function.size());
+        boolean[] near = new boolean[function.size()];
+        for (int i = 0; i < function.size(); i++) {
+            if (function.get(i) instanceof Operation operation) {
+                encoded.add(encode(operation));
+            } else {
+                encoded.add(new byte[0]);
+                // the target is in another function, so its distance is unknown
+                near[i] = function.get(i) instanceof Jump(String mnemonic, String target)
+                    && !labels.containsKey(target);
+            }
+        }
+
+        int[] offsets = new int[function.size() + 1];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < function.size(); i++) {
+                offsets[i + 1] = offsets[i] + size(function.get(i), encoded.get(i), near[i]);
+            }
+            for (int i = 0; i < function.size(); i++) {
+                if (function.get(i) instanceof Jump(String mnemonic, String target) && !near[i]) {
+                    int displacement = offsets[labels.get(target)] - offsets[i + 1];
+                    if (displacement != (byte) displacement) {
+                        near[i] = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        int base = this.text.size();
+        for (int i = 0; i < function.size(); i++) {
+            switch (function.get(i)) {
+                case Label(String name) -> {
+                    if (!name.startsWith(".L")) {
+                        this.symbols.put(name, base + offsets[i]);
+                    }
+                }
+                case Operation operation -> this.text.writeBytes(encoded.get(i));
+                case Jump(String mnemonic, String target) -> {
+                    int end = base + offsets[i + 1];
+                    writeJump(mnemonic, near[i]);
+                    if (labels.containsKey(target)) {
+                        int displacement = offsets[labels.get(target)] - offsets[i + 1];
+                        writeDisplacement(displacement, near[i]);
+                    } else {
+                        this.fixups.add(new Fixup(end - 4, end, target));
+                        writeDisplacement(0, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /// {@return the offset of a global label from the start of the code}
+    /// @throws IllegalArgumentException if there is no such label
+    int symbol(String name) {
+        Integer offset = this.symbols.get(name);
+        if (offset == null) {
+            throw new IllegalArgumentException("undefined symbol " + name);
+        }
+        return offset;
+    }
+
+    /// {@return the machine code of all functions, with jumps and calls between functions resolved}
+    /// @throws IllegalArgumentException if a jump or call targets an undefined label
+    byte[] code() {
+        byte[] code = this.text.toByteArray();
+        for (Fixup fixup : this.fixups) {
+            int displacement = symbol(fixup.target()) - fixup.end();
+            for (int i = 0; i < 4; i++) {
+                code[fixup.position() + i] = (byte) (displacement >> 8 * i);
+            }
+        }
+        return code;
+    }
+
+    private static int size(Instruction instruction, byte[] encoded, boolean near) {
+        if (instruction instanceof Jump(String mnemonic, String target)) {
+            if (!near) {
+                return 2;
+            }
+            // jmp rel32 and call rel32 have a one byte opcode, jcc rel32 a two byte one
+            return mnemonic.equals("jmp") || mnemonic.equals("call") ? 5 : 6;
+        }
+        return encoded.length;
+    }
+
+    private void writeJump(String mnemonic, boolean near) {
+        switch (mnemonic) {
+            case "jmp" -> this.text.write(near ? 0xE9 : 0xEB);
+            case "call" -> this.text.write(0xE8);
+            default -> {
+                int condition = conditionCode(mnemonic.substring(1));
+                if (near) {
+                    this.text.write(0x0F);
+                    this.text.write(0x80 | condition);
+                } else {
+                    this.text.write(0x70 | condition);
+                }
+            }
+        }
+    }
+
+    private void writeDisplacement(int displacement, boolean near) {
+        if (near) {
+            for (int i = 0; i < 4; i++) {
+                this.text.write(displacement >> 8 * i);
+            }
+        } else {
+            this.text.write(displacement);
+        }
+    }
+
+    /// {@return the machine code of a single instruction}
+    /// @throws IllegalArgumentException if the instruction or one of its operands has no encoding here
+    static byte[] encode(Operation operation) {
+        Encoding out = new Encoding();
+        String mnemonic = operation.mnemonic();
+        List<Register> operands = operation.operands();
+        switch (mnemonic) {
+            case "movl" -> move(out, operands.get(0), operands.get(1), false);
+            case "movq" -> move(out, operands.get(0), operands.get(1), true);
+            case "addl" -> arithmetic(out, 0, operands.get(0), operands.get(1), false);
+            case "orl" -> arithmetic(out, 1, operands.get(0), operands.get(1), false);
+            case "andl" -> arithmetic(out, 4, operands.get(0), operands.get(1), false);
+            case "subl" -> arithmetic(out, 5, operands.get(0), operands.get(1), false);
+            case "xorl" -> arithmetic(out, 6, operands.get(0), operands.get(1), false);
+            case "cmpl" -> arithmetic(out, 7, operands.get(0), operands.get(1), false);
+            case "addq" -> arithmetic(out, 0, operands.get(0), operands.get(1), true);
+            case "subq" -> arithmetic(out, 5, operands.get(0), operands.get(1), true);
+            case "imull" -> multiply(out, operands);
+            case "notl" -> out.instruction(new int[] {0xF7}, 2, operand(operands.get(0)), false);
+            case "negl" -> out.instruction(new int[] {0xF7}, 3, operand(operands.get(0)), false);
+            case "idivl" -> out.instruction(new int[] {0xF7}, 7, operand(operands.get(0)), false);
+            case "sall" -> shift(out, 4, operands.get(0), operands.get(1));
+            case "shrl" -> shift(out, 5, operands.get(0), operands.get(1));
+            case "sarl" -> shift(out, 7, operands.get(0), operands.get(1));
+            case "leal" -> out.instruction(new int[] {0x8D}, register(operands.get(1)), operand(operands.get(0)), false);
+            case "movzbl" ->
+                out.instruction(new int[] {0x0F, 0xB6}, register(operands.get(1)), operand(operands.get(0)), false);
+            case "pushq" -> pushOrPop(out, 0x50, 0xFF, 6, operands.get(0));
+            case "popq" -> pushOrPop(out, 0x58, 0x8F, 0, operands.get(0));
+            case "cltd" -> out.write(0x99);
+            case "leave" -> out.write(0xC9);
+            case "ret" -> out.write(0xC3);
+            case "syscall" -> {
+                out.write(0x0F);
+                out.write(0x05);
+            }
+            default -> {
+                if (mnemonic.startsWith("set")) {
+                    int condition = conditionCode(mnemonic.substring("set".length()));
+                    out.instruction(new int[] {0x0F, 0x90 | condition}, 0, operand(operands.get(0)), false);
+                } else if (mnemonic.startsWith("cmov") && mnemonic.endsWith("l")) {
+                    int condition = conditionCode(mnemonic.substring("cmov".length(), mnemonic.length() - 1));
+                    out.instruction(new int[] {0x0F, 0x40 | condition}, register(operands.get(1)),
+                        operand(operands.get(0)), false);
+                } else {
+                    throw new IllegalArgumentException("cannot encode " + mnemonic);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void move(Encoding out, Register source, Register destination, boolean wide) {
+        if (source instanceof Immediate(int value)) {
+            Operand target = operand(destination);
+            if (target.isRegister() && !wide) {
+                // the short form with the register in the opcode
+                out.rex(false, 0, target);
+                out.write(0xB8 | target.register() & 7);
+            } else {
+                out.instruction(new int[] {0xC7}, 0, target, wide);
+            }
+            out.write32(value);
+        } else if (source instanceof PhysicalRegister) {
+            out.instruction(new int[] {0x89}, register(source), operand(destination), wide);
+        } else {
+            out.instruction(new int[] {0x8B}, register(destination), operand(source), wide);
+        }
+    }
+
+    /// Encodes one of the classic arithmetic instructions, whose opcodes only differ in the `digit`.
+    private static void arithmetic(Encoding out, int digit, Register source, Register destination, boolean wide) {
+        if (source instanceof Immediate(int value)) {
+            boolean small = value == (byte) value;
+            out.instruction(new int[] {small ? 0x83 : 0x81}, digit, operand(destination), wide);
+            writeImmediate(out, value, small);
+        } else if (source instanceof PhysicalRegister) {
+            out.instruction(new int[] {digit << 3 | 0x01}, register(source), operand(destination), wide);
+        } else {
+            out.instruction(new int[] {digit << 3 | 0x03}, register(destination), operand(source), wide);
+        }
+    }
+
+    private static void multiply(Encoding out, List<Register> operands) {
+        switch (operands.size()) {
+            case 1 -> out.instruction(new int[] {0xF7}, 5, operand(operands.get(0)), false);
+            case 2 -> {
+                if (operands.get(0) instanceof Immediate) {
+                    // imull $c, r is short for imull $c, r, r
+                    multiply(out, List.of(operands.get(0), operands.get(1), operands.get(1)));
+                } else {
+                    out.instruction(new int[] {0x0F, 0xAF}, register(operands.get(1)), operand(operands.get(0)), false);
+                }
+            }
+            default -> {
+                int value = ((Immediate) operands.get(0)).value();
+                boolean small = value == (byte) value;
+                out.instruction(new int[] {small ? 0x6B : 0x69}, register(operands.get(2)), operand(operands.get(1)),
+                    false);
+                writeImmediate(out, value, small);
+            }
+        }
+    }
+
+    private static void shift(Encoding out, int digit, Register count, Register destination) {
+        if (count instanceof Immediate(int value) && (value & 31) == 1) {
+            // a shift by one has its own opcode without an immediate
+            out.instruction(new int[] {0xD1}, digit, operand(destination), false);
+        } else if (count instanceof Immediate(int value)) {
+            out.instruction(new int[] {0xC1}, digit, operand(destination), false);
+            out.write(value & 31);
+        } else {
+            // the only variable count is %cl
+            out.instruction(new int[] {0xD3}, digit, operand(destination), false);
+        }
+    }
+
+    private static void pushOrPop(Encoding out, int registerOpcode, int memoryOpcode, int digit, Register operand) {
+        Operand target = operand(operand);
+        if (target.isRegister()) {
+            // the operand size is 64 bit by default, so no REX.W is needed
+            out.rex(false, 0, target);
+            out.write(registerOpcode | target.register() & 7);
+        } else {
+            out.instruction(new int[] {memoryOpcode}, digit, target, false);
+        }
+    }
+
+    private static void writeImmediate(Encoding out, int value, boolean small) {
+        if (small) {
+            out.write(value);
+        } else {
+            out.write32(value);
+        }
+    }
+
+    /// {@return the four bit condition code of a `jcc`, `setcc` or `cmovcc` suffix}
+    private static int conditionCode(String suffix) {
+        Condition condition = Condition.ofSuffix(suffix);
+        if (condition == null) {
+            throw new IllegalArgumentException("unknown condition " + suffix);
+        }
+        return switch (condition) {
+            case EQUAL -> 0x4;
+            case NOT_EQUAL -> 0x5;
+            case LESS -> 0xC;
+            case GREATER_EQUAL -> 0xD;
+            case LESS_EQUAL -> 0xE;
+            case GREATER -> 0xF;
+        };
+    }
+
+    private static int register(Register register) {
+        return operand(register).register();
+    }
+
+    private static Operand operand(Register register) {
+        return switch (register) {
+            case PhysicalRegister physical -> Operand.of(physical.name());
+            case SpillRegister(int offset) -> new Operand(-1, RBP, -1, 1, offset, false);
+            case Address(Register base, Register index, int scale, int displacement) -> new Operand(-1,
+                base == null ? -1 : register(base), index == null ? -1 : register(index), scale, displacement, false);
+            default -> throw new IllegalArgumentException("cannot encode operand " + register);
+        };
+    }
+
+    /// A register, or a memory location `displacement(base, index, scale)`, as encoded by a ModRM byte.
+    /// Registers are numbered as in the encoding, `-1` means there is none.
+    ///
+    /// @param byteRegister whether the register is the low byte of a register, for which
+    ///                     `%spl` to `%dil` need a REX prefix
+    private record Operand(int register, int base, int index, int scale, int displacement, boolean byteRegister) {
+        private static final List<String> NAMES = List.of("ax", "cx", "dx", "bx", "sp", "bp", "si", "di");
+
+        static Operand of(String name) {
+            String bare = name.substring(1);
+            if (bare.startsWith("r") && Character.isDigit(bare.charAt(1))) {
+                // %r8 to %r15, with a suffix d or b for the smaller parts
+                boolean byteRegister = bare.endsWith("b");
+                String digits = bare.substring(1).replaceAll("[db]$", "");
+                return new Operand(Integer.parseInt(digits), -1, -1, 1, 0, byteRegister);
+            }
+            if (bare.length() == 2 && bare.endsWith("l")) {
+                // %al to %bl
+                return new Operand(NAMES.indexOf(bare.charAt(0) + "x"), -1, -1, 1, 0, true);
+            }
+            if (bare.length() == 3 && bare.endsWith("l")) {
+                // %spl to %dil
+                return new Operand(NAMES.indexOf(bare.substring(0, 2)), -1, -1, 1, 0, true);
+            }
+            int number = NAMES.indexOf(bare.substring(1));
+            if (number < 0) {
+                throw new IllegalArgumentException("unknown register " + name);
+            }
+            return new Operand(number, -1, -1, 1, 0, false);
+        }
+
+        boolean isRegister() {
+            return this.register >= 0;
+        }
+    }
+
+    /// The bytes of an instruction being encoded.
+    private static final class Encoding extends ByteArrayOutputStream {
+        /// Writes the prefix, opcode and operand bytes of an instruction with a ModRM byte.
+        /// @param reg the register or opcode extension in the `reg` field
+        void instruction(int[] opcode, int reg, Operand rm, boolean wide) {
+            rex(wide, reg, rm);
+            for (int b : opcode) {
+                write(b);
+            }
+            int field = (reg & 7) << 3;
+            if (rm.isRegister()) {
+                write(0xC0 | field | rm.register() & 7);
+                return;
+            }
+            int scale = Integer.numberOfTrailingZeros(rm.scale()) << 6;
+            int displacement = rm.displacement();
+            if (rm.base() < 0) {
+                // no base needs a SIB byte with base 101 and a 32 bit displacement
+                write(field | 0x04);
+                write(scale | (rm.index() < 0 ? RSP : rm.index() & 7) << 3 | RBP);
+                write32(displacement);
+                return;
+            }
+            // a base of %rbp or %r13 without displacement would mean no base, so it gets a zero displacement
+            int mod = displacement == 0 && (rm.base() & 7) != RBP ? 0 : displacement == (byte) displacement ? 1 : 2;
+            if (rm.index() < 0 && (rm.base() & 7) != RSP) {
+                write(mod << 6 | field | rm.base() & 7);
+            } else {
+                // a base of %rsp or %r12 can only be encoded in a SIB byte, index 100 means there is none
+                write(mod << 6 | field | 0x04);
+                write(scale | (rm.index() < 0 ? RSP : rm.index() & 7) << 3 | rm.base() & 7);
+            }
+            if (mod == 1) {
+                write(displacement);
+            } else if (mod == 2) {
+                write32(displacement);
+            }
+        }
+
+        /// Writes a REX prefix if the instruction needs one.
+        void rex(boolean wide, int reg, Operand rm) {
+            int rex = (wide ? 0x08 : 0) | (reg & 8) >> 1;
+            if (rm.isRegister()) {
+                rex |= (rm.register() & 8) >> 3;
+            } else {
+                rex |= rm.index() < 0 ? 0 : (rm.index() & 8) >> 2;
+                rex |= rm.base() < 0 ? 0 : (rm.base() & 8) >> 3;
+            }
+            // without a REX prefix, the byte registers 4 to 7 would be %ah to %bh
+            boolean byteRegister = rm.byteRegister() && rm.register() >= 4;
+            if (rex != 0 || byteRegister) {
+                write(0x40 | rex);
+            }
+        }
+
+        void write32(int value) {
+            for (int i = 0; i < 4; i++) {
+                write(value >> 8 * i);
+            }
+        }
+    }
+
+    /// A near displacement at `position` to a symbol that is resolved at the end, relative to the
+    /// end of its instruction.
+    private record Fixup(int position, int end, String target) {
+    }
+}
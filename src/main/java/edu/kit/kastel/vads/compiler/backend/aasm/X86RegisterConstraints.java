@@ -0,0 +1,77 @@
+package edu.kit.kastel.vads.compiler.backend.aasm;
+
+import edu.kit.kastel.vads.compiler.backend.regalloc.PhysicalRegister;
+import edu.kit.kastel.vads.compiler.backend.regalloc.RegisterConstraints;
+import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
+import edu.kit.kastel.vads.compiler.ir.node.SarNode;
+import edu.kit.kastel.vads.compiler.ir.node.ShlNode;
+import org.jspecify.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.Set;
+
+import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
+
+/// The registers the instructions emitted by [CodeGenerator] work with.
+///
+/// `idivl` divides `%edx:%eax` and leaves the quotient in `%eax` and the remainder in `%edx`.
+/// The dividend is moved to `%eax` and sign extended into `%edx` before, so both are clobbered,
+/// and the divisor has to be somewhere else. A shift by a count that is not constant takes the count
+/// in `%cl`, so the shifted value must not be in `%ecx`. Functions return their result in `%eax`.
+///
+/// Nodes the [InstructionSelector] folded into the instruction of their user get no register.
+final class X86RegisterConstraints implements RegisterConstraints {
+    private final PhysicalRegister eax;
+    private final PhysicalRegister ecx;
+    private final PhysicalRegister edx;
+    private final BitSet folded;
+
+    X86RegisterConstraints(PhysicalRegister eax, PhysicalRegister ecx, PhysicalRegister edx, BitSet folded) {
+        this.eax = eax;
+        this.ecx = ecx;
+        this.edx = edx;
+        this.folded = folded;
+    }
+
+    @Override
+    public @Nullable PhysicalRegister resultRegister(Node node) {
+        return switch (node) {
+            case DivNode _ -> this.eax;
+            case ModNode _ -> this.edx;
+            default -> null;
+        };
+    }
+
+    @Override
+    public @Nullable PhysicalRegister operandRegister(Node node, int index) {
+        return switch (node) {
+            case DivNode _, ModNode _ -> index == BinaryOperationNode.LEFT ? this.eax : null;
+            case ReturnNode _ -> index == ReturnNode.RESULT ? this.eax : null;
+            case ShlNode _, SarNode _ when hasVariableCount(node) -> index == BinaryOperationNode.RIGHT ? this.ecx : null;
+            default -> null;
+        };
+    }
+
+    @Override
+    public Set<PhysicalRegister> clobbers(Node node) {
+        return switch (node) {
+            case DivNode _, ModNode _ -> Set.of(this.eax, this.edx);
+            case ShlNode _, SarNode _ when hasVariableCount(node) -> Set.of(this.ecx);
+            default -> Set.of();
+        };
+    }
+
+    private static boolean hasVariableCount(Node node) {
+        return !(predecessorSkipProj(node, BinaryOperationNode.RIGHT) instanceof ConstIntNode);
+    }
+
+    @Override
+    public boolean isFolded(Node node) {
+        return this.folded.get(node.id());
+    }
+}
@@ -0,0 +1,87 @@
+package edu.kit.kastel.vads.compiler.backend.regalloc;
+
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
+
+/// What a [RegisterAllocator] did for one function.
+///
+/// @param function the name of the function
+/// @param values the number of SSA values that needed a location
+/// @param interferenceEdges the number of edges in the interference graph, `-1` if none was built
+/// @param maxCliqueSize the largest number of values live at the same time
+/// @param colorsUsed the number of distinct physical registers handed out
+/// @param spills the number of stack slots handed out
+/// @param coalescedCopies the number of copies removed by merging their values
+/// @param remainingCopies the number of phi copies whose operand ended up in another location than the phi
+/// @param livenessNanos the time spent computing liveness, including building the control flow graph
+/// @param buildNanos the time spent building the interference graph or live intervals
+/// @param orderingNanos the time spent ordering values for assignment
+/// @param coloringNanos the time spent assigning registers and choosing spills
+public record AllocationStatistics(
+    String function,
+    int values,
+    int interferenceEdges,
+    int maxCliqueSize,
+    int colorsUsed,
+    int spills,
+    int coalescedCopies,
+    int remainingCopies,
+    long livenessNanos,
+    long buildNanos,
+    long orderingNanos,
+    long coloringNanos
+) {
+
+    /// {@return the number of distinct physical registers in the allocation}
+    static int colorsUsed(Map<Node, Register> allocation) {
+        Set<Register> registers = new HashSet<>();
+        for (Register register : allocation.values()) {
+            if (register instanceof PhysicalRegister) {
+                registers.add(register);
+            }
+        }
+        return registers.size();
+    }
+
+    /// {@return the number of distinct stack slots in the allocation}
+    static int spills(Map<Node, Register> allocation) {
+        Set<Register> slots = new HashSet<>();
+        for (Register register : allocation.values()) {
+            if (register instanceof SpillRegister) {
+                slots.add(register);
+            }
+        }
+        return slots.size();
+    }
+
+    /// {@return the number of phi operands that have to be copied on a reachable incoming edge}
+    static int remainingCopies(LivenessAnalysis liveness, Map<Node, Register> allocation) {
+        ControlFlowGraph cfg = liveness.controlFlowGraph();
+        int copies = 0;
+        for (Block block : cfg.blocks()) {
+            List<Block> predecessors = cfg.predecessors(block);
+            for (Node node : cfg.nodes(block)) {
+                if (!(node instanceof Phi) || !liveness.isValue(node)) {
+                    continue;
+                }
+                for (int i = 0; i < predecessors.size(); i++) {
+                    Node operand = predecessorSkipProj(node, i);
+                    if (cfg.isReachable(predecessors.get(i)) && liveness.isValue(operand)
+                        && !allocation.get(operand).equals(allocation.get(node))) {
+                        copies++;
+                    }
+                }
+            }
+        }
+        return copies;
+    }
+}
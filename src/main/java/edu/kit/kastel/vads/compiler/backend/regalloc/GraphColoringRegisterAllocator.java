@@ -1,188 +1,533 @@
 package edu.kit.kastel.vads.compiler.backend.regalloc;
 
 import edu.kit.kastel.vads.compiler.ir.IrGraph;
-import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
 
 import java.util.*;
 
+import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
+
 
 public class GraphColoringRegisterAllocator implements RegisterAllocator {
-    // x86-64 style
-    private static final List<PhysicalRegister> DEFAULT_PHYSICAL_REGISTERS = Arrays.asList(
-        new PhysicalRegister("ebx", 0),  
-        new PhysicalRegister("ecx", 1),  
-        new PhysicalRegister("edx", 2),  
-        new PhysicalRegister("esi", 3),  
-        new PhysicalRegister("edi", 4),  
-        new PhysicalRegister("r8d", 5),  
-        new PhysicalRegister("r9d", 6),  
-        new PhysicalRegister("r10d", 7), 
-        new PhysicalRegister("r11d", 8),
-        new PhysicalRegister("r12d", 9),
-        new PhysicalRegister("r13d", 10), 
-        new PhysicalRegister("r14d", 11), 
-        new PhysicalRegister("r15d", 12)  
-    );
-    
     private final List<PhysicalRegister> physicalRegisters;
-    private IrGraph graph;
     private LivenessAnalysis liveness;
+    private RegisterConstraints constraints = RegisterConstraints.NONE;
+    // per value, the bit set of register indices it must not be placed in
+    private long[] forbidden;
+    // per value, the index of the register it should be placed in, or -1
+    private int[] preferred;
     private int stackOffset = 0; 
+    private int maxCliqueSize;
+    private int coalescedCopies;
+    private AllocationStatistics statistics;
     
     /**
-      @param physicalRegisters The list of available physical registers
+      @param physicalRegisters The list of available physical registers, as chosen by the code generator
      */
     public GraphColoringRegisterAllocator(List<PhysicalRegister> physicalRegisters) {
-        this.physicalRegisters = physicalRegisters != null ? physicalRegisters : DEFAULT_PHYSICAL_REGISTERS;
+        if (physicalRegisters.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " registers are supported");
+        }
+        this.physicalRegisters = physicalRegisters;
     }
     
+    /// {@return statistics about the last allocation}
+    /// Coalescing counts as building the graph, choosing spills as coloring.
+    @Override
+    public AllocationStatistics statistics() {
+        return this.statistics;
+    }
+
     @Override
     public Map<Node, Register> allocateRegisters(IrGraph graph) {
-        this.graph = graph;
+        return allocateRegisters(graph, RegisterConstraints.NONE);
+    }
+
+    @Override
+    public Map<Node, Register> allocateRegisters(IrGraph graph, RegisterConstraints constraints) {
+        long start = System.nanoTime();
         this.liveness = new LivenessAnalysis();
-        this.liveness.analyze(graph);
+        this.liveness.analyze(new ControlFlowGraph(graph), constraints);
+        this.constraints = constraints;
         this.stackOffset = 0;  
+        this.maxCliqueSize = 0;
+        this.coalescedCopies = 0;
+        long livenessDone = System.nanoTime();
         
-        Map<Node, Set<Node>> interferenceGraph = new HashMap<>();
-        Set<Node> allNodes = new HashSet<>();
-        collectNodes(graph.endBlock(), allNodes);
-        
-        for (Node node : allNodes) {
-            interferenceGraph.put(node, new HashSet<>());
-        }
-        
-        for (Node node1 : allNodes) {
-            for (Node node2 : allNodes) {
-                if (node1 != node2 && mayInterfere(node1, node2)) {
-                    interferenceGraph.get(node1).add(node2);
-                    interferenceGraph.get(node2).add(node1);
-                }
+        InterferenceGraph interferenceGraph = buildInterferenceGraph(liveness.values());
+        int interferenceEdges = interferenceGraph.edgeCount();
+        collectConstraints(interferenceGraph);
+        long buildDone = System.nanoTime();
+        double[] costs = spillCosts(interferenceGraph);
+        boolean[] spilled = spillUnderPressure(interferenceGraph, costs);
+        long spillingDone = System.nanoTime();
+        coalesce(interferenceGraph, spilled);
+        // a merged value has to meet the constraints of all values it represents
+        for (int node = 0; node < interferenceGraph.size(); node++) {
+            int representative = interferenceGraph.representative(node);
+            forbidden[representative] |= forbidden[node];
+            if (preferred[representative] < 0) {
+                preferred[representative] = preferred[node];
             }
         }
-        
-        List<Node> orderedNodes = maximumCardinalitySearch(interferenceGraph, allNodes);
-       
-        Map<Node, Register> allocation = greedyColoring(interferenceGraph, orderedNodes);
+        long coalescingDone = System.nanoTime();
+        int[] orderedNodes = maximumCardinalitySearch(interferenceGraph, spilled);
+        long orderingDone = System.nanoTime();
+        Map<Node, Register> allocation = greedyColoring(interferenceGraph, orderedNodes, costs, spilled);
+        long coloringDone = System.nanoTime();
+        this.statistics = new AllocationStatistics(
+            graph.name(),
+            interferenceGraph.size(),
+            interferenceEdges,
+            this.maxCliqueSize,
+            AllocationStatistics.colorsUsed(allocation),
+            AllocationStatistics.spills(allocation),
+            this.coalescedCopies,
+            AllocationStatistics.remainingCopies(this.liveness, allocation),
+            livenessDone - start,
+            (buildDone - livenessDone) + (coalescingDone - spillingDone),
+            orderingDone - coalescingDone,
+            (spillingDone - buildDone) + (coloringDone - orderingDone)
+        );
         
         return allocation;
     }
     
-    private List<Node> maximumCardinalitySearch(Map<Node, Set<Node>> interferenceGraph, Set<Node> allNodes) {
-        Map<Node, Integer> weights = new HashMap<>();
-        for (Node node : allNodes) {
-            weights.put(node, 0);
+    /// Computes a maximum cardinality search order, which is a perfect elimination order
+    /// in reverse for chordal graphs such as SSA interference graphs.
+    ///
+    /// Unprocessed nodes are kept in doubly linked buckets indexed by their weight, so picking
+    /// a node of maximum weight and moving a neighbor one bucket up both take constant time.
+    /// The maximum weight only grows by one per processed edge, so finding the next non-empty
+    /// bucket costs `O(n + m)` over the whole search.
+    ///
+    /// Only values that were neither spilled nor merged into another one by [#coalesce] are ordered.
+    private int[] maximumCardinalitySearch(InterferenceGraph interferenceGraph, boolean[] spilled) {
+        int size = interferenceGraph.size();
+        int[] weights = new int[size];
+        int[] next = new int[size];
+        int[] previous = new int[size];
+        // a node can have at most size - 1 processed neighbors
+        int[] buckets = new int[size + 1];
+        Arrays.fill(buckets, -1);
+        boolean[] processed = new boolean[size];
+        int count = 0;
+        for (int node = size - 1; node >= 0; node--) {
+            if (interferenceGraph.representative(node) == node && !spilled[node]) {
+                pushToBucket(buckets, next, previous, 0, node);
+                count++;
+            } else {
+                // spilled values are still part of the graph, but must not be ordered
+                processed[node] = true;
+            }
         }
         
-        Set<Node> unprocessed = new HashSet<>(allNodes);
-        List<Node> ordering = new ArrayList<>();
-        
-        while (!unprocessed.isEmpty()) {
-            Node maxWeightNode = null;
-            int maxWeight = -1;
-            for (Node node : unprocessed) {
-                int weight = weights.get(node);
-                if (weight > maxWeight) {
-                    maxWeight = weight;
-                    maxWeightNode = node;
-                }
+        int[] ordering = new int[count];
+        int maxWeight = 0;
+        for (int i = 0; i < count; i++) {
+            while (buckets[maxWeight] < 0) {
+                maxWeight--;
             }
+            int maxWeightNode = buckets[maxWeight];
+            removeFromBucket(buckets, next, previous, maxWeight, maxWeightNode);
+            processed[maxWeightNode] = true;
+            ordering[i] = maxWeightNode;
             
-            ordering.add(maxWeightNode);
-            
-            for (Node neighbor : interferenceGraph.get(maxWeightNode)) {
-                if (unprocessed.contains(neighbor)) {
-                    weights.put(neighbor, weights.get(neighbor) + 1);
+            for (int neighbor : interferenceGraph.neighbors(maxWeightNode)) {
+                if (!processed[neighbor]) {
+                    removeFromBucket(buckets, next, previous, weights[neighbor], neighbor);
+                    weights[neighbor]++;
+                    pushToBucket(buckets, next, previous, weights[neighbor], neighbor);
+                    maxWeight = Math.max(maxWeight, weights[neighbor]);
                 }
             }
-            
-            unprocessed.remove(maxWeightNode);
         }
         
         return ordering;
     }
+
+    private static void pushToBucket(int[] buckets, int[] next, int[] previous, int weight, int node) {
+        int head = buckets[weight];
+        next[node] = head;
+        previous[node] = -1;
+        if (head >= 0) {
+            previous[head] = node;
+        }
+        buckets[weight] = node;
+    }
+
+    private static void removeFromBucket(int[] buckets, int[] next, int[] previous, int weight, int node) {
+        if (previous[node] >= 0) {
+            next[previous[node]] = next[node];
+        } else {
+            buckets[weight] = next[node];
+        }
+        if (next[node] >= 0) {
+            previous[next[node]] = previous[node];
+        }
+    }
     
-    private Map<Node, Register> greedyColoring(Map<Node, Set<Node>> interferenceGraph, List<Node> orderedNodes) {
-        Map<Node, Register> allocation = new HashMap<>();
-        
-        for (Node node : orderedNodes) {
-            Set<Register> usedColors = new HashSet<>();
-            for (Node neighbor : interferenceGraph.get(node)) {
-                Register color = allocation.get(neighbor);
-                if (color != null) {
-                    usedColors.add(color);
+    /// Moves values to the stack until no more values are live at any point than there are
+    /// registers. Wherever there are too many, one of the values live across the point is spilled,
+    /// as spilling the value defined there only moves the pressure to its next use.
+    /// Among those, the value with the lowest [spill cost][#spillCosts] per point of too high
+    /// pressure it is live at goes first: a long-lived value that is rarely used relieves many
+    /// points at once, so it is spilled before a short temporary, while values used in loops, and
+    /// loop-carried values in particular, stay in registers as long as there is anything cheaper.
+    ///
+    /// The values live at a point form a clique in the interference graph, and for the chordal
+    /// interference graphs of SSA form the largest clique determines how many colors are needed,
+    /// so afterwards the remaining values can be colored without spilling.
+    /// Values live across a node that clobbers registers have fewer registers to choose from.
+    private boolean[] spillUnderPressure(InterferenceGraph interferenceGraph, double[] costs) {
+        double[] priorities = spillPriorities(interferenceGraph, costs);
+        boolean[] spilled = new boolean[interferenceGraph.size()];
+        List<Integer> live = new ArrayList<>();
+        for (Block block : liveness.controlFlowGraph().blocks()) {
+            liveness.forEachLiveAfter(block, (node, liveAfter) -> {
+                live.clear();
+                int index = interferenceGraph.index(node);
+                if (index >= 0 && !spilled[index]) {
+                    live.add(index);
                 }
-            }
-            
-            Register color = null;
-            for (PhysicalRegister reg : physicalRegisters) {
-                if (!usedColors.contains(reg)) {
-                    color = reg;
-                    break;
+                for (int id = liveAfter.nextSetBit(0); id >= 0; id = liveAfter.nextSetBit(id + 1)) {
+                    int other = interferenceGraph.indexOfId(id);
+                    if (id != node.id() && !spilled[other]) {
+                        live.add(other);
+                    }
+                }
+                // the values live across the node come after the node itself, if it is in the list
+                int across = index >= 0 && !spilled[index] ? 1 : 0;
+                while (live.size() > physicalRegisters.size()) {
+                    spillCheapest(live, across, priorities, spilled);
+                }
+                int available = physicalRegisters.size() - Long.bitCount(registerMask(constraints.clobbers(node)));
+                while (live.size() - across > available) {
+                    spillCheapest(live, across, priorities, spilled);
+                }
+            });
+        }
+        return spilled;
+    }
+
+    /// Divides the [spill cost][#spillCosts] of each value by the number of points of too high
+    /// pressure it is live across, which are the points spilling it relieves.
+    /// Also records the largest number of values live at the same time.
+    private double[] spillPriorities(InterferenceGraph interferenceGraph, double[] costs) {
+        int[] pressurePoints = new int[interferenceGraph.size()];
+        for (Block block : liveness.controlFlowGraph().blocks()) {
+            liveness.forEachLiveAfter(block, (node, liveAfter) -> {
+                int index = interferenceGraph.index(node);
+                int across = liveAfter.cardinality() - (liveAfter.get(node.id()) ? 1 : 0);
+                int liveCount = across + (index >= 0 ? 1 : 0);
+                // the live values form a clique, and in a chordal graph the largest one is found this way
+                maxCliqueSize = Math.max(maxCliqueSize, liveCount);
+                int available = physicalRegisters.size() - Long.bitCount(registerMask(constraints.clobbers(node)));
+                if (liveCount <= physicalRegisters.size() && across <= available) {
+                    return;
+                }
+                for (int id = liveAfter.nextSetBit(0); id >= 0; id = liveAfter.nextSetBit(id + 1)) {
+                    if (id != node.id()) {
+                        pressurePoints[interferenceGraph.indexOfId(id)]++;
+                    }
                 }
+            });
+        }
+        double[] priorities = new double[costs.length];
+        for (int i = 0; i < costs.length; i++) {
+            priorities[i] = costs[i] / Math.max(1, pressurePoints[i]);
+        }
+        return priorities;
+    }
+
+    private static void spillCheapest(List<Integer> live, int from, double[] costs, boolean[] spilled) {
+        int cheapest = from;
+        for (int i = from + 1; i < live.size(); i++) {
+            if (costs[live.get(i)] < costs[live.get(cheapest)]) {
+                cheapest = i;
             }
-            
-            if (color == null) {
-                color = new SpillRegister(stackOffset);
-                stackOffset += 8;  // 每个变量8bytes
+        }
+        spilled[live.remove(cheapest)] = true;
+    }
+
+    /// Translates the constraints of the nodes into [#forbidden] and [#preferred] registers of values.
+    private void collectConstraints(InterferenceGraph interferenceGraph) {
+        this.forbidden = new long[interferenceGraph.size()];
+        this.preferred = new int[interferenceGraph.size()];
+        Arrays.fill(this.preferred, -1);
+        for (Block block : liveness.controlFlowGraph().blocks()) {
+            liveness.forEachLiveAfter(block, (node, liveAfter) -> {
+                int index = interferenceGraph.index(node);
+                if (index >= 0) {
+                    prefer(index, constraints.resultRegister(node));
+                }
+                long clobbers = registerMask(constraints.clobbers(node));
+                if (!(node instanceof Phi)) {
+                    for (int i = 0; i < node.predecessors().size(); i++) {
+                        int operand = interferenceGraph.index(predecessorSkipProj(node, i));
+                        if (operand < 0) {
+                            continue;
+                        }
+                        PhysicalRegister register = constraints.operandRegister(node, i);
+                        if (register != null) {
+                            prefer(operand, register);
+                        } else {
+                            forbidden[operand] |= clobbers;
+                        }
+                    }
+                }
+                if (clobbers != 0) {
+                    for (int id = liveAfter.nextSetBit(0); id >= 0; id = liveAfter.nextSetBit(id + 1)) {
+                        if (id != node.id()) {
+                            forbidden[interferenceGraph.indexOfId(id)] |= clobbers;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void prefer(int value, PhysicalRegister register) {
+        int index = register == null ? -1 : physicalRegisters.indexOf(register);
+        if (index >= 0 && preferred[value] < 0) {
+            preferred[value] = index;
+        }
+    }
+
+    private long registerMask(Set<PhysicalRegister> registers) {
+        long mask = 0;
+        for (PhysicalRegister register : registers) {
+            int index = physicalRegisters.indexOf(register);
+            if (index >= 0) {
+                mask |= 1L << index;
             }
-            
-            allocation.put(node, color);
         }
-        
-        return allocation;
+        return mask;
     }
-    
-    private boolean mayInterfere(Node node1, Node node2) {
-        if (node1.equals(node2)) {
-            return false;
+
+    /// Colors the nodes in the given order, each with the first register none of its colored
+    /// neighbors has and that is not [forbidden][#forbidden] for it.
+    /// A value gets its [preferred][#preferred] register if that one is available, and other values
+    /// avoid taking registers their uncolored neighbors prefer.
+    ///
+    /// After [#spillUnderPressure] this only runs out of registers if coalescing made the graph
+    /// harder to color. Then the node and its colored neighbors compete for the registers, and the
+    /// one with the lowest spill cost is moved to the stack as well.
+    private Map<Node, Register> greedyColoring(
+        InterferenceGraph interferenceGraph,
+        int[] orderedNodes,
+        double[] costs,
+        boolean[] spilled
+    ) {
+        // coalesced values are spilled together, so they cost as much as all of them
+        double[] classCosts = new double[interferenceGraph.size()];
+        for (int node = 0; node < interferenceGraph.size(); node++) {
+            classCosts[interferenceGraph.representative(node)] += costs[node];
         }
+        // colors[i] is the index of the register of node i, or -1 if it has none (yet)
+        int[] colors = new int[interferenceGraph.size()];
+        Arrays.fill(colors, -1);
+        long all = physicalRegisters.size() == Long.SIZE ? -1 : (1L << physicalRegisters.size()) - 1;
         
-        Set<Node> allNodes = new HashSet<>();
-        collectNodes(graph.endBlock(), allNodes);
+        for (int node : orderedNodes) {
+            int color = -1;
+            while (color < 0 && !spilled[node]) {
+                long used = forbidden[node];
+                long avoided = 0;
+                for (int neighbor : interferenceGraph.neighbors(node)) {
+                    if (colors[neighbor] >= 0) {
+                        used |= 1L << colors[neighbor];
+                    } else if (!spilled[neighbor] && preferred[neighbor] >= 0) {
+                        avoided |= 1L << preferred[neighbor];
+                    }
+                }
+                
+                long free = all & ~used;
+                if (preferred[node] >= 0 && (free & (1L << preferred[node])) != 0) {
+                    color = preferred[node];
+                } else if ((free & ~avoided) != 0) {
+                    color = Long.numberOfTrailingZeros(free & ~avoided);
+                } else if (free != 0) {
+                    color = Long.numberOfTrailingZeros(free);
+                } else {
+                    // only spilling a neighbor with a register this node may use frees one
+                    int victim = node;
+                    for (int neighbor : interferenceGraph.neighbors(node)) {
+                        if (colors[neighbor] >= 0 && (forbidden[node] & (1L << colors[neighbor])) == 0
+                            && classCosts[neighbor] < classCosts[victim]) {
+                            victim = neighbor;
+                        }
+                    }
+                    spilled[victim] = true;
+                    colors[victim] = -1;
+                }
+            }
+            if (!spilled[node]) {
+                colors[node] = color;
+            }
+        }
         
-        for (Node node : allNodes) {
-            Set<Node> liveAfter = liveness.getLiveAfter(node);
-            if (liveAfter.contains(node1) && liveAfter.contains(node2)) {
-                return true;
+        Map<Node, Register> allocation = new HashMap<>();
+        for (int node = 0; node < interferenceGraph.size(); node++) {
+            if (interferenceGraph.representative(node) != node) {
+                continue;
             }
-            
-            if (node instanceof BinaryOperationNode) {
-                Node dest = node;
-                if (dest.equals(node1) && liveAfter.contains(node2)) {
-                    return true;
+            if (spilled[node]) {
+                stackOffset -= 8;  // 每个变量8bytes
+                allocation.put(interferenceGraph.node(node), new SpillRegister(stackOffset));
+            } else {
+                allocation.put(interferenceGraph.node(node), physicalRegisters.get(colors[node]));
+            }
+        }
+        // coalesced values share the register of the value they were merged into
+        for (int node = 0; node < interferenceGraph.size(); node++) {
+            int representative = interferenceGraph.representative(node);
+            if (representative != node) {
+                allocation.put(interferenceGraph.node(node), allocation.get(interferenceGraph.node(representative)));
+            }
+        }
+        
+        return allocation;
+    }
+
+    /// Estimates how many memory accesses spilling each value would cost: every definition and use
+    /// counts `10` to the power of the loop depth it happens at.
+    /// A phi is written and its operand read by the copy at the end of each predecessor block,
+    /// so both are paid for there. A phi that passes itself around a loop needs no copy on that
+    /// edge, so a variable the loop never changes is cheap to keep on the stack.
+    private double[] spillCosts(InterferenceGraph interferenceGraph) {
+        ControlFlowGraph cfg = liveness.controlFlowGraph();
+        double[] costs = new double[interferenceGraph.size()];
+        for (Block block : cfg.blocks()) {
+            double weight = Math.pow(10, cfg.loopDepth(block));
+            for (Node node : cfg.nodes(block)) {
+                int index = interferenceGraph.index(node);
+                if (node instanceof Phi) {
+                    if (index < 0) {
+                        // side effect phis have no operands to pay for
+                        continue;
+                    }
+                    List<Block> predecessors = cfg.predecessors(block);
+                    for (int i = 0; i < predecessors.size(); i++) {
+                        int operand = interferenceGraph.index(predecessorSkipProj(node, i));
+                        if (operand != index && cfg.isReachable(predecessors.get(i))) {
+                            double edgeWeight = Math.pow(10, cfg.loopDepth(predecessors.get(i)));
+                            costs[index] += edgeWeight;
+                            if (operand >= 0) {
+                                costs[operand] += edgeWeight;
+                            }
+                        }
+                    }
+                    continue;
+                }
+                if (index >= 0) {
+                    costs[index] += weight;
                 }
-                if (dest.equals(node2) && liveAfter.contains(node1)) {
-                    return true;
+                for (Node use : liveness.uses(node)) {
+                    costs[interferenceGraph.index(use)] += weight;
                 }
             }
         }
-        
-        return false;
+        return costs;
     }
     
-    private void collectNodes(Node node, Set<Node> nodes) {
-        if (nodes.add(node)) {
-            for (Node predecessor : node.predecessors()) {
-                collectNodes(predecessor, nodes);
+    /// Merges values that are connected by a copy into one node of the interference graph, so they
+    /// end up in the same register and the copy disappears. Phis copy their operands on the
+    /// incoming edges.
+    ///
+    /// Merging is conservative: two values are only merged if they do not interfere and either the
+    /// Briggs test or the George test guarantees the merged graph is no harder to color with the
+    /// available registers than before.
+    /// Spilled values live in their own stack slot and are not merged.
+    private void coalesce(InterferenceGraph interferenceGraph, boolean[] spilled) {
+        for (int index = 0; index < interferenceGraph.size(); index++) {
+            if (spilled[index]) {
+                continue;
+            }
+            Node node = interferenceGraph.node(index);
+            if (node instanceof Phi phi) {
+                for (int i = 0; i < phi.predecessors().size(); i++) {
+                    tryCoalesce(interferenceGraph, spilled, index, predecessorSkipProj(phi, i));
+                }
             }
         }
     }
 
-    private static class SpillRegister implements Register {
-        private final int offset;  // 相对于 %rbp 的偏移量
-        
-        public SpillRegister(int offset) {
-            this.offset = offset;
+    private void tryCoalesce(InterferenceGraph interferenceGraph, boolean[] spilled, int copy, Node source) {
+        int sourceIndex = interferenceGraph.index(source);
+        if (sourceIndex < 0 || spilled[sourceIndex]) {
+            return;
         }
-        
-        @Override
-        public String toString() {
-            return String.format("%d(%%rbp)", offset);  // 返回栈偏移量格式
+        int a = interferenceGraph.representative(copy);
+        int b = interferenceGraph.representative(sourceIndex);
+        if (a == b || interferenceGraph.interferes(a, b)) {
+            return;
         }
-        
-        public int getOffset() {
-            return offset;
+        if (briggs(interferenceGraph, a, b) || george(interferenceGraph, a, b) || george(interferenceGraph, b, a)) {
+            // keep the larger adjacency in place, only the smaller one needs to be rewritten
+            if (interferenceGraph.degree(a) >= interferenceGraph.degree(b)) {
+                interferenceGraph.merge(a, b);
+            } else {
+                interferenceGraph.merge(b, a);
+            }
+            coalescedCopies++;
+        }
+    }
+
+    /// Briggs: the merged node has fewer than `k` neighbors of significant degree.
+    private boolean briggs(InterferenceGraph interferenceGraph, int a, int b) {
+        int k = physicalRegisters.size();
+        int significant = 0;
+        for (int neighbor : interferenceGraph.neighbors(a)) {
+            // a common neighbor loses one edge by the merge
+            int degree = interferenceGraph.degree(neighbor) - (interferenceGraph.interferes(neighbor, b) ? 1 : 0);
+            if (degree >= k) {
+                significant++;
+            }
+        }
+        for (int neighbor : interferenceGraph.neighbors(b)) {
+            if (!interferenceGraph.interferes(neighbor, a) && interferenceGraph.degree(neighbor) >= k) {
+                significant++;
+            }
+        }
+        return significant < k;
+    }
+
+    /// George: every neighbor of `a` already interferes with `b` or has insignificant degree.
+    private boolean george(InterferenceGraph interferenceGraph, int a, int b) {
+        int k = physicalRegisters.size();
+        for (int neighbor : interferenceGraph.neighbors(a)) {
+            if (interferenceGraph.degree(neighbor) >= k && !interferenceGraph.interferes(neighbor, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /// Builds the interference graph in a single sweep over the liveness results:
+    /// every definition interferes with each value that is live right after it.
+    /// This is sufficient for SSA form, as two values that are live at the same time
+    /// always have one of them live at the definition of the other.
+    private InterferenceGraph buildInterferenceGraph(List<Node> values) {
+        IrGraph graph = liveness.controlFlowGraph().graph();
+        InterferenceGraph interferenceGraph = new InterferenceGraph(values, graph.nodeCount());
+        for (Block block : liveness.controlFlowGraph().blocks()) {
+            liveness.forEachLiveAfter(block, (definition, liveAfter) -> {
+                int index = interferenceGraph.index(definition);
+                if (index < 0) {
+                    return;
+                }
+                for (int id = liveAfter.nextSetBit(0); id >= 0; id = liveAfter.nextSetBit(id + 1)) {
+                    if (id != definition.id()) {
+                        interferenceGraph.addEdge(index, interferenceGraph.indexOfId(id));
+                    }
+                }
+            });
         }
+        interferenceGraph.freeze();
+        return interferenceGraph;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package edu.kit.kastel.vads.compiler.backend.regalloc;
+
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/// An undirected graph over the values of a function, with an edge between every two values
+/// that are live at the same time.
+///
+/// Values are numbered densely from `0` to [#size()] in the order they were passed in, and all
+/// queries work on these indices, so allocators can keep their per-value state in plain arrays.
+/// Edges are collected with [#addEdge] and become visible through [#neighbors] after [#freeze].
+///
+/// Once frozen, values can be [merged][#merge] for coalescing. A merged value is represented by
+/// the value it was merged into, see [#representative], and adjacency only refers to representatives.
+final class InterferenceGraph {
+    private final List<Node> nodes;
+    private final int[] indexById;
+    private final int[][] adjacency;
+    private final int[] degree;
+    private final int[] mergedInto;
+    private int edgeCount;
+
+    InterferenceGraph(List<Node> nodes, int nodeIdCount) {
+        this.nodes = List.copyOf(nodes);
+        this.indexById = new int[nodeIdCount];
+        Arrays.fill(this.indexById, -1);
+        for (int i = 0; i < this.nodes.size(); i++) {
+            this.indexById[this.nodes.get(i).id()] = i;
+        }
+        this.adjacency = new int[this.nodes.size()][];
+        Arrays.fill(this.adjacency, new int[0]);
+        this.degree = new int[this.nodes.size()];
+        this.mergedInto = new int[this.nodes.size()];
+        Arrays.setAll(this.mergedInto, i -> i);
+    }
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    Node node(int index) {
+        return this.nodes.get(index);
+    }
+
+    /// {@return the index of the value with the given node id, or `-1` if it is not part of the graph}
+    int indexOfId(int nodeId) {
+        return this.indexById[nodeId];
+    }
+
+    int index(Node node) {
+        return indexOfId(node.id());
+    }
+
+    /// Adds an edge between two distinct values. Adding the same edge twice is allowed,
+    /// duplicates are removed by [#freeze].
+    void addEdge(int a, int b) {
+        append(a, b);
+        append(b, a);
+    }
+
+    /// Removes duplicate edges. Must be called once after all edges were added.
+    void freeze() {
+        int[] seenBy = new int[size()];
+        Arrays.fill(seenBy, -1);
+        int endpoints = 0;
+        for (int node = 0; node < size(); node++) {
+            int[] row = this.adjacency[node];
+            int count = 0;
+            for (int i = 0; i < this.degree[node]; i++) {
+                int neighbor = row[i];
+                if (seenBy[neighbor] != node) {
+                    seenBy[neighbor] = node;
+                    row[count++] = neighbor;
+                }
+            }
+            this.adjacency[node] = Arrays.copyOf(row, count);
+            this.degree[node] = count;
+            endpoints += count;
+        }
+        this.edgeCount = endpoints / 2;
+    }
+
+    /// {@return the indices of the values interfering with the given one}
+    /// The returned array must not be modified.
+    int[] neighbors(int index) {
+        if (this.adjacency[index].length != this.degree[index]) {
+            this.adjacency[index] = Arrays.copyOf(this.adjacency[index], this.degree[index]);
+        }
+        return this.adjacency[index];
+    }
+
+    int degree(int index) {
+        return this.degree[index];
+    }
+
+    int edgeCount() {
+        return this.edgeCount;
+    }
+
+    /// {@return whether there is an edge between the two values}
+    boolean interferes(int a, int b) {
+        int from = this.degree[a] <= this.degree[b] ? a : b;
+        int to = from == a ? b : a;
+        int[] row = this.adjacency[from];
+        for (int i = 0; i < this.degree[from]; i++) {
+            if (row[i] == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// {@return the value the given value was merged into, or the value itself if it was not merged}
+    int representative(int index) {
+        while (this.mergedInto[index] != index) {
+            this.mergedInto[index] = this.mergedInto[this.mergedInto[index]];
+            index = this.mergedInto[index];
+        }
+        return index;
+    }
+
+    /// Merges the value `from` into `into`, which afterwards interferes with the neighbors of both.
+    /// Both must be representatives that do not interfere with each other.
+    void merge(int into, int from) {
+        int[] fromRow = this.adjacency[from];
+        for (int i = 0; i < this.degree[from]; i++) {
+            int neighbor = fromRow[i];
+            if (interferes(neighbor, into)) {
+                remove(neighbor, from);
+                this.edgeCount--;
+            } else {
+                replace(neighbor, from, into);
+                append(into, neighbor);
+            }
+        }
+        this.adjacency[from] = new int[0];
+        this.degree[from] = 0;
+        this.mergedInto[from] = into;
+    }
+
+    private void remove(int from, int to) {
+        int[] row = this.adjacency[from];
+        for (int i = 0; i < this.degree[from]; i++) {
+            if (row[i] == to) {
+                row[i] = row[--this.degree[from]];
+                return;
+            }
+        }
+    }
+
+    private void replace(int from, int to, int replacement) {
+        int[] row = this.adjacency[from];
+        for (int i = 0; i < this.degree[from]; i++) {
+            if (row[i] == to) {
+                row[i] = replacement;
+                return;
+            }
+        }
+    }
+
+    private void append(int from, int to) {
+        int[] row = this.adjacency[from];
+        if (this.degree[from] == row.length) {
+            row = Arrays.copyOf(row, Math.max(4, row.length * 2));
+            this.adjacency[from] = row;
+        }
+        row[this.degree[from]++] = to;
+    }
+}
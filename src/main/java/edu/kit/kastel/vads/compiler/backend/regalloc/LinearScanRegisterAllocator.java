@@ -0,0 +1,270 @@
+package edu.kit.kastel.vads.compiler.backend.regalloc;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+
+import java.util.*;
+
+import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
+
+/// A register allocator that trades allocation quality for speed, following
+/// [`Linear Scan Register Allocation`](https://dl.acm.org/doi/10.1145/330249.330250) by Poletto and Sarkar.
+///
+/// All scheduled nodes are numbered along the block order of the [ControlFlowGraph]. Every value
+/// gets a single live interval from its definition to its last use, widened to cover each block
+/// it is live in or live out of. Intervals are then handed registers in order of their start.
+/// When no register is free, the interval ending last is spilled.
+///
+/// [RegisterConstraints] are honored per interval: an interval that covers a clobbering node, or
+/// reads an operand there without a fixed register, never gets a clobbered register, and a free
+/// fixed register is preferred over the others.
+///
+/// No interference graph is built, so allocation time grows roughly linearly with the size of the
+/// function and the number of values live at block boundaries.
+public class LinearScanRegisterAllocator implements RegisterAllocator {
+    private final List<PhysicalRegister> physicalRegisters;
+    private AllocationStatistics statistics;
+
+    public LinearScanRegisterAllocator(List<PhysicalRegister> physicalRegisters) {
+        if (physicalRegisters.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " registers are supported");
+        }
+        this.physicalRegisters = physicalRegisters;
+    }
+
+    @Override
+    public Map<Node, Register> allocateRegisters(IrGraph graph) {
+        return allocateRegisters(graph, RegisterConstraints.NONE);
+    }
+
+    @Override
+    public Map<Node, Register> allocateRegisters(IrGraph graph, RegisterConstraints constraints) {
+        long start = System.nanoTime();
+        ControlFlowGraph cfg = new ControlFlowGraph(graph);
+        LivenessAnalysis liveness = new LivenessAnalysis();
+        liveness.analyze(cfg, constraints);
+        long livenessDone = System.nanoTime();
+
+        List<Interval> intervals = buildIntervals(cfg, liveness, constraints);
+        long buildDone = System.nanoTime();
+        intervals.sort(Comparator.comparingInt(Interval::start));
+        long orderingDone = System.nanoTime();
+        Map<Node, Register> allocation = scan(intervals);
+        long scanDone = System.nanoTime();
+
+        this.statistics = new AllocationStatistics(
+            graph.name(),
+            intervals.size(),
+            -1,
+            maxOverlap(intervals),
+            AllocationStatistics.colorsUsed(allocation),
+            AllocationStatistics.spills(allocation),
+            0,
+            AllocationStatistics.remainingCopies(liveness, allocation),
+            livenessDone - start,
+            buildDone - livenessDone,
+            orderingDone - buildDone,
+            scanDone - orderingDone
+        );
+        return allocation;
+    }
+
+    /// {@return statistics about the last allocation}
+    /// No interference graph is built, so the edge count is always `-1`.
+    @Override
+    public AllocationStatistics statistics() {
+        return this.statistics;
+    }
+
+    /// {@return the largest number of intervals covering the same position}
+    /// The intervals must be sorted by their start.
+    private static int maxOverlap(List<Interval> intervals) {
+        PriorityQueue<Integer> ends = new PriorityQueue<>();
+        int max = 0;
+        for (Interval interval : intervals) {
+            while (!ends.isEmpty() && ends.peek() < interval.start()) {
+                ends.poll();
+            }
+            ends.add(interval.end());
+            max = Math.max(max, ends.size());
+        }
+        return max;
+    }
+
+    private List<Interval> buildIntervals(ControlFlowGraph cfg, LivenessAnalysis liveness, RegisterConstraints constraints) {
+        Interval[] byId = new Interval[cfg.graph().nodeCount()];
+        List<Interval> intervals = new ArrayList<>();
+        // positions of clobbering nodes in ascending order, with the registers they clobber
+        List<Integer> clobberPositions = new ArrayList<>();
+        List<Long> clobberMasks = new ArrayList<>();
+        int position = 0;
+        for (Block block : cfg.blocks()) {
+            int blockStart = position;
+            List<Node> nodes = cfg.nodes(block);
+            int lastPhi = blockStart;
+            for (Node node : nodes) {
+                if (liveness.isValue(node)) {
+                    Interval interval = new Interval(node, position);
+                    interval.preferred = registerIndex(constraints.resultRegister(node));
+                    byId[node.id()] = interval;
+                    intervals.add(interval);
+                }
+                if (node instanceof Phi) {
+                    lastPhi = position;
+                } else {
+                    // phi operands are read on the incoming edges, see below
+                    for (Node use : liveness.uses(node)) {
+                        byId[use.id()].extendTo(position);
+                    }
+                    long clobbers = registerMask(constraints.clobbers(node));
+                    for (int i = 0; i < node.predecessors().size(); i++) {
+                        Node operand = predecessorSkipProj(node, i);
+                        if (!liveness.isValue(operand)) {
+                            continue;
+                        }
+                        Interval interval = byId[operand.id()];
+                        int register = registerIndex(constraints.operandRegister(node, i));
+                        if (register >= 0) {
+                            if (interval.preferred < 0) {
+                                interval.preferred = register;
+                            }
+                        } else {
+                            interval.forbidden |= clobbers;
+                        }
+                    }
+                    if (clobbers != 0) {
+                        clobberPositions.add(position);
+                        clobberMasks.add(clobbers);
+                    }
+                }
+                position++;
+            }
+            int blockEnd = Math.max(blockStart, position - 1);
+            // all phis of a block are defined at the same time
+            for (Node node : nodes) {
+                if (!(node instanceof Phi)) {
+                    break;
+                }
+                if (byId[node.id()] != null) {
+                    byId[node.id()].extendTo(lastPhi);
+                }
+            }
+            BitSet liveOut = liveness.liveOut(block);
+            for (int id = liveOut.nextSetBit(0); id >= 0; id = liveOut.nextSetBit(id + 1)) {
+                byId[id].extendTo(blockEnd);
+            }
+            BitSet liveIn = liveness.liveIn(block);
+            for (int id = liveIn.nextSetBit(0); id >= 0; id = liveIn.nextSetBit(id + 1)) {
+                byId[id].extendTo(blockStart);
+            }
+            if (position == blockStart) {
+                position++;
+            }
+        }
+        // values live after a clobbering node must not be in a clobbered register
+        for (Interval interval : intervals) {
+            int first = Collections.binarySearch(clobberPositions, interval.start() + 1);
+            for (int i = first < 0 ? -first - 1 : first; i < clobberPositions.size(); i++) {
+                if (clobberPositions.get(i) >= interval.end()) {
+                    break;
+                }
+                interval.forbidden |= clobberMasks.get(i);
+            }
+        }
+        return intervals;
+    }
+
+    private int registerIndex(PhysicalRegister register) {
+        return register == null ? -1 : this.physicalRegisters.indexOf(register);
+    }
+
+    private long registerMask(Set<PhysicalRegister> registers) {
+        long mask = 0;
+        for (PhysicalRegister register : registers) {
+            int index = registerIndex(register);
+            if (index >= 0) {
+                mask |= 1L << index;
+            }
+        }
+        return mask;
+    }
+
+    private Map<Node, Register> scan(List<Interval> intervals) {
+        Map<Node, Register> allocation = new HashMap<>();
+        long free = this.physicalRegisters.size() == Long.SIZE ? -1 : (1L << this.physicalRegisters.size()) - 1;
+        // active intervals that hold a register, ordered by their end
+        PriorityQueue<Interval> active = new PriorityQueue<>(Comparator.comparingInt(Interval::end));
+        int stackOffset = 0;
+        for (Interval current : intervals) {
+            while (!active.isEmpty() && active.peek().end() < current.start()) {
+                free |= 1L << active.poll().register;
+            }
+            long allowed = free & ~current.forbidden;
+            if (allowed != 0) {
+                if (current.preferred >= 0 && (allowed & (1L << current.preferred)) != 0) {
+                    current.register = current.preferred;
+                } else {
+                    current.register = Long.numberOfTrailingZeros(allowed);
+                }
+                free &= ~(1L << current.register);
+                active.add(current);
+                continue;
+            }
+            Interval furthest = current;
+            for (Interval interval : active) {
+                if (interval.end() > furthest.end() && (current.forbidden & (1L << interval.register)) == 0) {
+                    furthest = interval;
+                }
+            }
+            stackOffset -= 8;
+            Register spill = new SpillRegister(stackOffset);
+            if (furthest != current) {
+                // the register is taken from the interval that ends last, it lives on the stack from now on
+                active.remove(furthest);
+                current.register = furthest.register;
+                furthest.register = -1;
+                active.add(current);
+                allocation.put(furthest.node, spill);
+            } else {
+                allocation.put(current.node, spill);
+            }
+        }
+        for (Interval interval : intervals) {
+            if (interval.register >= 0 && !allocation.containsKey(interval.node)) {
+                allocation.put(interval.node, this.physicalRegisters.get(interval.register));
+            }
+        }
+        return allocation;
+    }
+
+    private static final class Interval {
+        private final Node node;
+        private final int start;
+        private int end;
+        private int register = -1;
+        private int preferred = -1;
+        // the bit set of register indices the interval must not get
+        private long forbidden;
+
+        Interval(Node node, int start) {
+            this.node = node;
+            this.start = start;
+            this.end = start;
+        }
+
+        int start() {
+            return this.start;
+        }
+
+        int end() {
+            return this.end;
+        }
+
+        void extendTo(int position) {
+            this.end = Math.max(this.end, position);
+        }
+    }
+}
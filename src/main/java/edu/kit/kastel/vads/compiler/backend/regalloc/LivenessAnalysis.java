@@ -1,84 +1,300 @@
 package edu.kit.kastel.vads.compiler.backend.regalloc;
 
 import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
 import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.BranchNode;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
 import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
+import edu.kit.kastel.vads.compiler.ir.node.SelectNode;
 
 import java.util.*;
 
 import static edu.kit.kastel.vads.compiler.ir.util.NodeSupport.predecessorSkipProj;
 
+/// Computes which values are live at which point of a [ControlFlowGraph].
+///
+/// This is a classic backwards dataflow analysis over blocks. Live-in and live-out sets
+/// are stored as bitsets over node ids and iterated with a worklist until they reach a
+/// fixed point, so loops are handled exactly. Liveness at single instructions is not stored,
+/// but derived by walking a block backwards from its live-out set, see [#forEachLiveAfter].
+///
+/// A phi operand is live at the end of the corresponding predecessor block, not at the
+/// beginning of the block of the phi. Phis themselves are defined at the beginning of their block.
+///
+/// Constants are not values: they are cheaper to rematerialize at every use than to keep in a
+/// register, so they are never live and never take a register away from other values.
+/// Neither are nodes the code generator [folds][RegisterConstraints#isFolded] into their user.
+/// Their operands are read by the user instead, so they stay live until there.
 public class LivenessAnalysis {
-    private final Map<Node, Set<Node>> liveAfter = new HashMap<>();
-    private final Map<Node, Set<Node>> liveBefore = new HashMap<>();
-    
-    public void analyze(IrGraph graph) {
-        // 初始化所有节点的活跃集合initial liveness
-        Set<Node> allNodes = new HashSet<>();
-        collectNodes(graph.endBlock(), allNodes);
-        
-        for (Node node : allNodes) {
-            liveAfter.put(node, new HashSet<>());
-            liveBefore.put(node, new HashSet<>());
+    private ControlFlowGraph cfg;
+    private RegisterConstraints constraints = RegisterConstraints.NONE;
+    private BitSet values;
+    private BitSet[] liveIn;
+    private BitSet[] liveOut;
+
+    public void analyze(ControlFlowGraph cfg) {
+        analyze(cfg, RegisterConstraints.NONE);
+    }
+
+    public void analyze(ControlFlowGraph cfg, RegisterConstraints constraints) {
+        this.cfg = cfg;
+        this.constraints = constraints;
+        this.values = findValues(cfg, constraints);
+        int blockCount = cfg.blockCount();
+        BitSet[] gen = new BitSet[blockCount];
+        BitSet[] kill = new BitSet[blockCount];
+        this.liveIn = new BitSet[blockCount];
+        this.liveOut = new BitSet[blockCount];
+        for (Block block : cfg.blocks()) {
+            int index = cfg.index(block);
+            gen[index] = new BitSet();
+            kill[index] = new BitSet();
+            computeLocalSets(block, gen[index], kill[index]);
+            this.liveIn[index] = (BitSet) gen[index].clone();
+            this.liveOut[index] = new BitSet();
         }
-        
-        // 从末尾向前遍历bottom-up analysis
-        Set<Node> visited = new HashSet<>();
-        analyzeNode(graph.endBlock(), visited);
+
+        // visiting blocks in postorder first lets information flow backwards in few iterations
+        Deque<Block> worklist = new ArrayDeque<>(cfg.blocks().reversed());
+        BitSet queued = new BitSet(blockCount);
+        queued.set(0, blockCount);
+        while (!worklist.isEmpty()) {
+            Block block = worklist.poll();
+            int index = cfg.index(block);
+            queued.clear(index);
+
+            BitSet out = this.liveOut[index];
+            for (Block successor : cfg.successors(block)) {
+                out.or(this.liveIn[cfg.index(successor)]);
+                addPhiUses(successor, block, out);
+            }
+            BitSet in = (BitSet) out.clone();
+            in.andNot(kill[index]);
+            in.or(gen[index]);
+            if (!in.equals(this.liveIn[index])) {
+                this.liveIn[index] = in;
+                for (Block predecessor : cfg.predecessors(block)) {
+                    int predecessorIndex = cfg.index(predecessor);
+                    if (predecessorIndex >= 0 && !queued.get(predecessorIndex)) {
+                        queued.set(predecessorIndex);
+                        worklist.add(predecessor);
+                    }
+                }
+            }
+        }
+    }
+
+    public ControlFlowGraph controlFlowGraph() {
+        return this.cfg;
     }
-    
-    private void collectNodes(Node node, Set<Node> nodes) {
-        if (nodes.add(node)) {
-            for (Node predecessor : node.predecessors()) {
-                collectNodes(predecessor, nodes);
+
+    /// {@return whether the node produces a value that needs to be kept in a register}
+    public boolean isValue(Node node) {
+        return this.values.get(node.id());
+    }
+
+    /// {@return all values of the analyzed graph in schedule order}
+    public List<Node> values() {
+        List<Node> result = new ArrayList<>();
+        for (Block block : this.cfg.blocks()) {
+            for (Node node : this.cfg.nodes(block)) {
+                if (isValue(node)) {
+                    result.add(node);
+                }
             }
         }
+        return result;
     }
-    
-    private void analyzeNode(Node node, Set<Node> visited) {
-        if (!visited.add(node)) {
-            return;
+
+    /// {@return the ids of the values live at the beginning of the block, excluding its phis}
+    public BitSet liveIn(Block block) {
+        return (BitSet) this.liveIn[this.cfg.index(block)].clone();
+    }
+
+    /// {@return the ids of the values live at the end of the block, including the operands of successor phis}
+    public BitSet liveOut(Block block) {
+        return (BitSet) this.liveOut[this.cfg.index(block)].clone();
+    }
+
+    /// {@return the values the given node reads}
+    /// For a phi, these are the values flowing in along all incoming edges.
+    /// A folded node reads nothing itself, its user reads its operands.
+    public List<Node> uses(Node node) {
+        List<Node> uses = new ArrayList<>();
+        if (this.constraints.isFolded(node)) {
+            return uses;
         }
-        Set<Node> live = new HashSet<>(liveAfter.get(node));
-        // 移除定义变量kill
-        live.removeAll(defs(node));
-        // 添加gen
-        live.addAll(uses(node));
-        // 更新当前节点的活跃变量successor
-        liveBefore.put(node, live);
-        // 更新前驱节点的活跃变量predecessor
-        for (Node pred : node.predecessors()) {
-            liveAfter.put(pred, new HashSet<>(live));
-            analyzeNode(pred, visited);
+        switch (node) {
+            case BinaryOperationNode _ -> {
+                addUse(uses, predecessorSkipProj(node, BinaryOperationNode.LEFT));
+                addUse(uses, predecessorSkipProj(node, BinaryOperationNode.RIGHT));
+            }
+            case ReturnNode _ -> addUse(uses, predecessorSkipProj(node, ReturnNode.RESULT));
+            case BranchNode _ -> addUse(uses, predecessorSkipProj(node, 0));
+            case NotNode _ -> addUse(uses, predecessorSkipProj(node, NotNode.OPERAND));
+            case SelectNode _ -> {
+                addUse(uses, predecessorSkipProj(node, SelectNode.CONDITION));
+                addUse(uses, predecessorSkipProj(node, SelectNode.TRUE_VALUE));
+                addUse(uses, predecessorSkipProj(node, SelectNode.FALSE_VALUE));
+            }
+            case Phi _ -> {
+                for (int i = 0; i < node.predecessors().size(); i++) {
+                    addUse(uses, predecessorSkipProj(node, i));
+                }
+            }
+            default -> {
+            }
         }
+        return uses;
     }
-    
-    private Set<Node> defs(Node node) {
-        Set<Node> defs = new HashSet<>();
-        if (node instanceof BinaryOperationNode) {
-            defs.add(node);
+
+    /// Walks the block backwards and reports every scheduled node in it together with the
+    /// set of values that are live right after the node. Phis that merge side effects are skipped.
+    /// All phis of a block are defined at the same time, so each of them is reported with
+    /// the other phis being live.
+    /// The reported set is only valid during the callback and must not be modified.
+    public void forEachLiveAfter(Block block, LiveAfterConsumer consumer) {
+        BitSet live = liveOut(block);
+        List<Node> nodes = this.cfg.nodes(block);
+        List<Node> phis = new ArrayList<>();
+        for (Node node : nodes.reversed()) {
+            if (node instanceof Phi) {
+                if (isValue(node)) {
+                    phis.add(node);
+                }
+                continue;
+            }
+            consumer.accept(node, live);
+            live.clear(node.id());
+            for (Node use : uses(node)) {
+                live.set(use.id());
+            }
+        }
+        for (Node phi : phis) {
+            live.set(phi.id());
+        }
+        for (Node phi : phis) {
+            consumer.accept(phi, live);
         }
-        return defs;
     }
-    
-    private Set<Node> uses(Node node) {
-        Set<Node> uses = new HashSet<>();
-        if (node instanceof BinaryOperationNode) {
-            uses.add(predecessorSkipProj(node, BinaryOperationNode.LEFT));
-            uses.add(predecessorSkipProj(node, BinaryOperationNode.RIGHT));
-        } else if (node instanceof ReturnNode) {
-            // return expr, uses value
-            uses.add(predecessorSkipProj(node, ReturnNode.RESULT));
+
+    private void addUse(List<Node> uses, Node node) {
+        if (isValue(node)) {
+            uses.add(node);
+        } else if (this.constraints.isFolded(node)) {
+            addUse(uses, predecessorSkipProj(node, BinaryOperationNode.LEFT));
+            addUse(uses, predecessorSkipProj(node, BinaryOperationNode.RIGHT));
         }
-        return uses;
     }
-    
-    public Set<Node> getLiveAfter(Node node) {
-        return liveAfter.getOrDefault(node, Collections.emptySet());
+
+    private void computeLocalSets(Block block, BitSet gen, BitSet kill) {
+        for (Node node : this.cfg.nodes(block).reversed()) {
+            if (isValue(node)) {
+                kill.set(node.id());
+                gen.clear(node.id());
+            }
+            if (!(node instanceof Phi)) {
+                for (Node use : uses(node)) {
+                    gen.set(use.id());
+                }
+            }
+        }
     }
-    
-    public Set<Node> getLiveBefore(Node node) {
-        return liveBefore.getOrDefault(node, Collections.emptySet());
+
+    /// Adds the operands the phis of `block` take from `predecessor`.
+    private void addPhiUses(Block block, Block predecessor, BitSet live) {
+        List<Block> predecessors = this.cfg.predecessors(block);
+        for (Node node : this.cfg.nodes(block)) {
+            if (!(node instanceof Phi)) {
+                break;
+            }
+            if (!isValue(node)) {
+                continue;
+            }
+            for (int i = 0; i < predecessors.size(); i++) {
+                Node operand = predecessorSkipProj(node, i);
+                if (predecessors.get(i) == predecessor && isValue(operand)) {
+                    live.set(operand.id());
+                }
+            }
+        }
+    }
+
+    /// Finds all nodes that produce a value. Phis merging side effects are not values;
+    /// they are found by following side effect edges and the operands of other such phis.
+    /// Result projections are not values either, all their uses read the projected node directly.
+    private static BitSet findValues(ControlFlowGraph cfg, RegisterConstraints constraints) {
+        IrGraph graph = cfg.graph();
+        BitSet sideEffects = new BitSet(graph.nodeCount());
+        Deque<Node> worklist = new ArrayDeque<>();
+        List<Node> phis = new ArrayList<>();
+        for (Block block : cfg.blocks()) {
+            for (Node node : cfg.nodes(block)) {
+                switch (node) {
+                    case DivNode div -> worklist.add(div.predecessor(DivNode.SIDE_EFFECT));
+                    case ModNode mod -> worklist.add(mod.predecessor(ModNode.SIDE_EFFECT));
+                    case ReturnNode ret -> worklist.add(ret.predecessor(ReturnNode.SIDE_EFFECT));
+                    case ProjNode proj when proj.projectionInfo() == ProjNode.SimpleProjectionInfo.SIDE_EFFECT ->
+                        worklist.add(proj);
+                    case Phi phi -> phis.add(phi);
+                    default -> {
+                    }
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            while (!worklist.isEmpty()) {
+                Node node = worklist.poll();
+                if (sideEffects.get(node.id())) {
+                    continue;
+                }
+                sideEffects.set(node.id());
+                if (node instanceof Phi) {
+                    worklist.addAll(node.predecessors());
+                }
+            }
+            // a phi with a side effect operand merges side effects as well
+            changed = false;
+            for (Node phi : phis) {
+                if (sideEffects.get(phi.id())) {
+                    continue;
+                }
+                for (Node operand : phi.predecessors()) {
+                    if (sideEffects.get(operand.id())) {
+                        worklist.add(phi);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        BitSet values = new BitSet(graph.nodeCount());
+        for (Block block : cfg.blocks()) {
+            for (Node node : cfg.nodes(block)) {
+                boolean value = switch (node) {
+                    case BinaryOperationNode _, NotNode _, SelectNode _ -> !constraints.isFolded(node);
+                    case Phi phi -> !sideEffects.get(phi.id());
+                    default -> false;
+                };
+                if (value) {
+                    values.set(node.id());
+                }
+            }
+        }
+        return values;
+    }
+
+    @FunctionalInterface
+    public interface LiveAfterConsumer {
+        void accept(Node node, BitSet liveAfter);
     }
-} 
\ No newline at end of file
+}
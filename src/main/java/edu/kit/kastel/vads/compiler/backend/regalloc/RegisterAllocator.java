@@ -2,10 +2,22 @@ package edu.kit.kastel.vads.compiler.backend.regalloc;
 
 import edu.kit.kastel.vads.compiler.ir.IrGraph;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
+import org.jspecify.annotations.Nullable;
 
 import java.util.Map;
 
 public interface RegisterAllocator {
 
     Map<Node, Register> allocateRegisters(IrGraph graph);
+
+    /// Allocates registers such that the given constraints are met.
+    /// Allocators that do not hand out physical registers may ignore them.
+    default Map<Node, Register> allocateRegisters(IrGraph graph, RegisterConstraints constraints) {
+        return allocateRegisters(graph);
+    }
+
+    /// {@return statistics about the last allocation, or `null` if the allocator does not collect any}
+    default @Nullable AllocationStatistics statistics() {
+        return null;
+    }
 }
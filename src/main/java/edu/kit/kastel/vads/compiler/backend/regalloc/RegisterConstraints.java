@@ -0,0 +1,47 @@
+package edu.kit.kastel.vads.compiler.backend.regalloc;
+
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Set;
+
+/// Describes which registers the instructions emitted for a node expect its values in.
+///
+/// Fixed registers are preferences: an allocator places the value there whenever the register
+/// is free, but the code generator must still cope with any other register by inserting a move.
+/// Clobbers are hard requirements: no value that is live after a node, and no operand the node
+/// reads without a fixed register, may be placed in a register the node clobbers.
+public interface RegisterConstraints {
+    RegisterConstraints NONE = new RegisterConstraints() {
+        @Override
+        public @Nullable PhysicalRegister resultRegister(Node node) {
+            return null;
+        }
+
+        @Override
+        public @Nullable PhysicalRegister operandRegister(Node node, int index) {
+            return null;
+        }
+
+        @Override
+        public Set<PhysicalRegister> clobbers(Node node) {
+            return Set.of();
+        }
+    };
+
+    /// {@return the register the node produces its result in, or `null` if any register will do}
+    @Nullable PhysicalRegister resultRegister(Node node);
+
+    /// {@return the register the node reads the operand at the given predecessor index from,
+    /// or `null` if any register will do}
+    @Nullable PhysicalRegister operandRegister(Node node, int index);
+
+    /// {@return the registers the node overwrites}
+    Set<PhysicalRegister> clobbers(Node node);
+
+    /// {@return whether the node is computed as part of the instruction selected for its only user}
+    /// A folded node is a binary operation. It needs no register, its user reads both of its operands instead.
+    default boolean isFolded(Node node) {
+        return false;
+    }
+}
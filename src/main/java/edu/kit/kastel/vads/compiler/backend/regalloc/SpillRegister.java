@@ -0,0 +1,15 @@
+package edu.kit.kastel.vads.compiler.backend.regalloc;
+
+/**
+ * A value that did not get a physical register and lives in a stack slot instead.
+ *
+ * The slot is part of the stack frame of the function, below the saved {@code %rbp}.
+ *
+ * @param offset the negative offset of the slot relative to {@code %rbp}
+ */
+public record SpillRegister(int offset) implements Register {
+    @Override
+    public String toString() {
+        return String.format("%d(%%rbp)", offset);
+    }
+}
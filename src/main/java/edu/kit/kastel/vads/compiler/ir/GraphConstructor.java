@@ -6,19 +6,27 @@ import java.util.Map;
 import java.util.Set;
 
 import edu.kit.kastel.vads.compiler.ir.node.AddNode;
+import edu.kit.kastel.vads.compiler.ir.node.AndNode;
 import edu.kit.kastel.vads.compiler.ir.node.Block;
 import edu.kit.kastel.vads.compiler.ir.node.BranchNode;
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
 import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
 import edu.kit.kastel.vads.compiler.ir.node.DivNode;
 import edu.kit.kastel.vads.compiler.ir.node.JumpNode;
 import edu.kit.kastel.vads.compiler.ir.node.ModNode;
 import edu.kit.kastel.vads.compiler.ir.node.MulNode;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.OrNode;
 import edu.kit.kastel.vads.compiler.ir.node.Phi;
 import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
 import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
+import edu.kit.kastel.vads.compiler.ir.node.SarNode;
+import edu.kit.kastel.vads.compiler.ir.node.SelectNode;
+import edu.kit.kastel.vads.compiler.ir.node.ShlNode;
 import edu.kit.kastel.vads.compiler.ir.node.StartNode;
 import edu.kit.kastel.vads.compiler.ir.node.SubNode;
+import edu.kit.kastel.vads.compiler.ir.node.XorNode;
 import edu.kit.kastel.vads.compiler.ir.optimize.Optimizer;
 import edu.kit.kastel.vads.compiler.parser.symbol.Name;
 
@@ -54,10 +62,38 @@ class GraphConstructor {
         return this.optimizer.transform(new SubNode(currentBlock(), left, right));
     }
 
+    public Node newCompare(CompareNode.Relation relation, Node left, Node right) {
+        return this.optimizer.transform(new CompareNode(currentBlock(), left, right, relation));
+    }
+
     public Node newMul(Node left, Node right) {
         return this.optimizer.transform(new MulNode(currentBlock(), left, right));
     }
 
+    public Node newAnd(Node left, Node right) {
+        return this.optimizer.transform(new AndNode(currentBlock(), left, right));
+    }
+
+    public Node newOr(Node left, Node right) {
+        return this.optimizer.transform(new OrNode(currentBlock(), left, right));
+    }
+
+    public Node newXor(Node left, Node right) {
+        return this.optimizer.transform(new XorNode(currentBlock(), left, right));
+    }
+
+    public Node newNot(Node operand) {
+        return this.optimizer.transform(new NotNode(currentBlock(), operand));
+    }
+
+    public Node newShl(Node left, Node right) {
+        return this.optimizer.transform(new ShlNode(currentBlock(), left, right));
+    }
+
+    public Node newSar(Node left, Node right) {
+        return this.optimizer.transform(new SarNode(currentBlock(), left, right));
+    }
+
     public Node newDiv(Node left, Node right) {
         return this.optimizer.transform(new DivNode(currentBlock(), left, right, readCurrentSideEffect()));
     }
@@ -67,7 +103,14 @@ class GraphConstructor {
     }
 
     public Node newReturn(Node result) {
-        return new ReturnNode(currentBlock(), readCurrentSideEffect(), result);
+        Node ret = new ReturnNode(currentBlock(), readCurrentSideEffect(), result);
+        // Connect return to endBlock for traversal
+        this.graph.endBlock().addPredecessor(ret);
+        return ret;
+    }
+
+    public Node newSelect(Node condition, Node trueValue, Node falseValue) {
+        return this.optimizer.transform(new SelectNode(currentBlock(), condition, trueValue, falseValue));
     }
 
     public Node newConstInt(int value) {
@@ -92,13 +135,23 @@ class GraphConstructor {
         this.currentBlock = block;
     }
 
+    /// Ends the current block with a conditional branch.
+    /// The current block is added as a predecessor of both target blocks,
+    /// so they must not be sealed yet.
     public Node newBranch(Node condition, Block trueBlock, Block falseBlock) {
         Node branch = new BranchNode(currentBlock(), condition);
+        // Connect branch to endBlock for traversal
+        this.graph.endBlock().addPredecessor(branch);
         branch.addPredecessor(trueBlock);
         branch.addPredecessor(falseBlock);
+        trueBlock.addPredecessor(currentBlock());
+        falseBlock.addPredecessor(currentBlock());
         return branch;
     }
 
+    /// Ends the current block with an unconditional jump.
+    /// The current block is added as a predecessor of the target block,
+    /// so it must not be sealed yet.
     public Node newJump(Block targetBlock) {
         Node jump = new JumpNode(currentBlock());
         // Connect jump to endBlock for traversal
@@ -106,12 +159,21 @@ class GraphConstructor {
         // Store target block information by adding it as a predecessor
         // (this is a bit unconventional but works with our current structure)
         jump.addPredecessor(targetBlock);
+        targetBlock.addPredecessor(currentBlock());
         return jump;
     }
 
+    public Block newBlock() {
+        return new Block(this.graph);
+    }
+
     public Phi newPhi() {
+        return newPhi(currentBlock());
+    }
+
+    private Phi newPhi(Block block) {
         // don't transform phi directly, it is not ready yet
-        return new Phi(currentBlock());
+        return new Phi(block);
     }
 
     public IrGraph graph() {
@@ -133,12 +195,12 @@ class GraphConstructor {
     private Node readVariableRecursive(Name variable, Block block) {
         Node val;
         if (!this.sealedBlocks.contains(block)) {
-            val = newPhi();
+            val = newPhi(block);
             this.incompletePhis.computeIfAbsent(block, _ -> new HashMap<>()).put(variable, (Phi) val);
         } else if (block.predecessors().size() == 1) {
             val = readVariable(variable, block.predecessors().getFirst().block());
         } else {
-            val = newPhi();
+            val = newPhi(block);
             writeVariable(variable, block, val);
             val = addPhiOperands(variable, (Phi) val);
         }
@@ -154,10 +216,8 @@ class GraphConstructor {
     }
 
     Node tryRemoveTrivialPhi(Phi phi) {
-        // TODO: the paper shows how to remove trivial phis.
-        // as this is not a problem in Lab 1 and it is just
-        // a simplification, we recommend to implement this
-        // part yourself.
+        // trivial phis are removed after the construction by TrivialPhiElimination,
+        // as replacing them here would also need to update the current definitions
         return phi;
     }
 
@@ -165,6 +225,10 @@ class GraphConstructor {
         for (Map.Entry<Name, Phi> entry : this.incompletePhis.getOrDefault(block, Map.of()).entrySet()) {
             addPhiOperands(entry.getKey(), entry.getValue());
         }
+        Phi sideEffectPhi = this.incompleteSideEffectPhis.remove(block);
+        if (sideEffectPhi != null) {
+            addPhiOperands(sideEffectPhi);
+        }
         this.sealedBlocks.add(block);
     }
 
@@ -191,13 +255,13 @@ class GraphConstructor {
     private Node readSideEffectRecursive(Block block) {
         Node val;
         if (!this.sealedBlocks.contains(block)) {
-            val = newPhi();
+            val = newPhi(block);
             Phi old = this.incompleteSideEffectPhis.put(block, (Phi) val);
             assert old == null : "double readSideEffectRecursive for " + block;
         } else if (block.predecessors().size() == 1) {
             val = readSideEffect(block.predecessors().getFirst().block());
         } else {
-            val = newPhi();
+            val = newPhi(block);
             writeSideEffect(block, val);
             val = addPhiOperands((Phi) val);
         }
@@ -3,14 +3,18 @@ package edu.kit.kastel.vads.compiler.ir;
 import edu.kit.kastel.vads.compiler.ir.node.Block;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
 
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SequencedSet;
-import java.util.Set;
+import java.util.SequencedMap;
 
 public class IrGraph {
-    private final Map<Node, SequencedSet<Node>> successors = new IdentityHashMap<>();
+    // keyed by node id rather than by the nodes: two distinct nodes may be equal,
+    // for example after an operand was redirected, but they are still two users
+    private final Map<Node, SequencedMap<Integer, Node>> successors = new IdentityHashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
     private final Block startBlock;
     private final Block endBlock;
     private final String name;
@@ -21,21 +25,66 @@ public class IrGraph {
         this.endBlock = new Block(this);
     }
 
+    /// Registers a newly constructed node with this graph.
+    /// {@return the dense id of the node, i.e. the number of nodes registered before it}
+    public int registerNode(Node node) {
+        this.nodes.add(node);
+        return this.nodes.size() - 1;
+    }
+
+    /// {@return the number of nodes created in this graph so far}
+    /// Node ids are always in the range `[0, nodeCount())`, so they can be used
+    /// to index arrays and [java.util.BitSet]s.
+    public int nodeCount() {
+        return this.nodes.size();
+    }
+
+    /// {@return the node with the given id}
+    public Node node(int id) {
+        return this.nodes.get(id);
+    }
+
     public void registerSuccessor(Node node, Node successor) {
-        this.successors.computeIfAbsent(node, _ -> new LinkedHashSet<>()).add(successor);
+        this.successors.computeIfAbsent(node, _ -> new LinkedHashMap<>()).put(successor.id(), successor);
     }
 
     public void removeSuccessor(Node node, Node oldSuccessor) {
-        this.successors.computeIfAbsent(node, _ -> new LinkedHashSet<>()).remove(oldSuccessor);
+        this.successors.computeIfAbsent(node, _ -> new LinkedHashMap<>()).remove(oldSuccessor.id());
+    }
+
+    /// Redirects every use of `node` to `replacement`. Uses of `node` by itself are kept.
+    /// {@return the nodes that used `node`}
+    public List<Node> replaceUses(Node node, Node replacement) {
+        List<Node> users = successors(node);
+        for (Node user : users) {
+            if (user == node) {
+                continue;
+            }
+            for (int i = 0; i < user.predecessors().size(); i++) {
+                if (user.predecessor(i) == node) {
+                    user.setPredecessor(i, replacement);
+                }
+            }
+        }
+        return users;
+    }
+
+    /// Removes a node that is not used anymore from the successors of its predecessors,
+    /// so it does not count as their user. The node itself stays dead in the graph.
+    public void removeNode(Node node) {
+        for (Node predecessor : node.predecessors()) {
+            removeSuccessor(predecessor, node);
+        }
     }
 
-    /// {@return the set of nodes that have the given node as one of their inputs}
-    public Set<Node> successors(Node node) {
-        SequencedSet<Node> successors = this.successors.get(node);
+    /// {@return the nodes that have the given node as one of their inputs, each once, in the order they were added}
+    /// Distinct nodes are all listed, even if they are [equal][Node#equals].
+    public List<Node> successors(Node node) {
+        SequencedMap<Integer, Node> successors = this.successors.get(node);
         if (successors == null) {
-            return Set.of();
+            return List.of();
         }
-        return Set.copyOf(successors);
+        return List.copyOf(successors.values());
     }
 
     public Block startBlock() {
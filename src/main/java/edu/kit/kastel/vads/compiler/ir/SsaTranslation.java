@@ -6,6 +6,7 @@ import java.util.Optional;
 import java.util.function.BinaryOperator;
 
 import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
 import edu.kit.kastel.vads.compiler.ir.node.DivNode;
 import edu.kit.kastel.vads.compiler.ir.node.ModNode;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
@@ -19,6 +20,7 @@ import edu.kit.kastel.vads.compiler.parser.ast.BlockTree;
 import edu.kit.kastel.vads.compiler.parser.ast.BreakTree;
 import edu.kit.kastel.vads.compiler.parser.ast.ContinueTree;
 import edu.kit.kastel.vads.compiler.parser.ast.DeclarationTree;
+import edu.kit.kastel.vads.compiler.parser.ast.ExpressionTree;
 import edu.kit.kastel.vads.compiler.parser.ast.ForTree;
 import edu.kit.kastel.vads.compiler.parser.ast.FunctionTree;
 import edu.kit.kastel.vads.compiler.parser.ast.IdentExpressionTree;
@@ -84,11 +86,11 @@ public class SsaTranslation {
         
         // Simple class to hold loop context information
         private static class LoopContext {
-            final Block headerBlock;
+            final Block continueBlock;
             final Block exitBlock;
             
-            LoopContext(Block headerBlock, Block exitBlock) {
-                this.headerBlock = headerBlock;
+            LoopContext(Block continueBlock, Block exitBlock) {
+                this.continueBlock = continueBlock;
                 this.exitBlock = exitBlock;
             }
         }
@@ -111,6 +113,11 @@ public class SsaTranslation {
                 case ASSIGN_MUL -> data.constructor::newMul;
                 case ASSIGN_DIV -> (lhs, rhs) -> projResultDivMod(data, data.constructor.newDiv(lhs, rhs));
                 case ASSIGN_MOD -> (lhs, rhs) -> projResultDivMod(data, data.constructor.newMod(lhs, rhs));
+                case ASSIGN_SHIFT_LEFT -> data.constructor::newShl;
+                case ASSIGN_SHIFT_RIGHT -> data.constructor::newSar;
+                case ASSIGN_AND -> data.constructor::newAnd;
+                case ASSIGN_OR -> data.constructor::newOr;
+                case ASSIGN_XOR -> data.constructor::newXor;
                 case ASSIGN -> null;
                 default ->
                     throw new IllegalArgumentException("not an assignment operator " + assignmentTree.operator());
@@ -133,35 +140,30 @@ public class SsaTranslation {
         public Optional<Node> visit(BinaryOperationTree binaryOperationTree, SsaTranslation data) {
             pushSpan(binaryOperationTree);
             Node lhs = binaryOperationTree.lhs().accept(this, data).orElseThrow();
-            Node rhs = binaryOperationTree.rhs().accept(this, data).orElseThrow();
+            // the unary ~ and ! have no right operand
+            Node rhs = binaryOperationTree.rhs() == null
+                ? null
+                : binaryOperationTree.rhs().accept(this, data).orElseThrow();
             Node res = switch (binaryOperationTree.operatorType()) {
                 case MINUS -> data.constructor.newSub(lhs, rhs);
                 case PLUS -> data.constructor.newAdd(lhs, rhs);
                 case MUL -> data.constructor.newMul(lhs, rhs);
                 case DIV -> projResultDivMod(data, data.constructor.newDiv(lhs, rhs));
                 case MOD -> projResultDivMod(data, data.constructor.newMod(lhs, rhs));
-                case SHIFT_LEFT -> {
-                    // Correct implementation: x << n = x * (2^n)
-                    Node powerOfTwo = calculatePowerOfTwo(data, rhs);
-                    yield data.constructor.newMul(lhs, powerOfTwo);
-                }
-                case SHIFT_RIGHT -> {
-                    // Correct implementation: x >> n = x / (2^n)  
-                    Node powerOfTwo = calculatePowerOfTwo(data, rhs);
-                    yield projResultDivMod(data, data.constructor.newDiv(lhs, powerOfTwo));
-                }
-                case BITWISE_AND, BITWISE_OR, BITWISE_XOR -> {
-                    // For simplification in L2, treat bitwise operations as arithmetic operations
-                    // This is not correct mathematically but allows compilation to proceed
-                    // In a full implementation, we would need dedicated bitwise operation nodes
-                    yield data.constructor.newAdd(lhs, rhs);
-                }
-                case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL -> {
-                    // For comparison operators, create a subtraction and return it
-                    // The actual comparison will be handled by the BranchNode in CodeGenerator
-                    Node diff = data.constructor.newSub(lhs, rhs);
-                    yield diff;
-                }
+                case SHIFT_LEFT -> data.constructor.newShl(lhs, rhs);
+                case SHIFT_RIGHT -> data.constructor.newSar(lhs, rhs);
+                case BITWISE_AND -> data.constructor.newAnd(lhs, rhs);
+                case BITWISE_OR -> data.constructor.newOr(lhs, rhs);
+                case BITWISE_XOR -> data.constructor.newXor(lhs, rhs);
+                case BITWISE_NOT -> data.constructor.newNot(lhs);
+                // booleans are 0 or 1
+                case LOGICAL_NOT -> data.constructor.newXor(lhs, data.constructor.newConstInt(1));
+                case LESS -> data.constructor.newCompare(CompareNode.Relation.LESS, lhs, rhs);
+                case LESS_EQUAL -> data.constructor.newCompare(CompareNode.Relation.LESS_EQUAL, lhs, rhs);
+                case GREATER -> data.constructor.newCompare(CompareNode.Relation.GREATER, lhs, rhs);
+                case GREATER_EQUAL -> data.constructor.newCompare(CompareNode.Relation.GREATER_EQUAL, lhs, rhs);
+                case EQUAL -> data.constructor.newCompare(CompareNode.Relation.EQUAL, lhs, rhs);
+                case NOT_EQUAL -> data.constructor.newCompare(CompareNode.Relation.NOT_EQUAL, lhs, rhs);
                 default -> throw new IllegalArgumentException("not a binary expression operator " + binaryOperationTree.operatorType());
             };
             popSpan();
@@ -258,11 +260,8 @@ public class SsaTranslation {
         public Optional<Node> visit(ReturnTree returnTree, SsaTranslation data) {
             pushSpan(returnTree);
             Node node = returnTree.expression().accept(this, data).orElseThrow();
-            Node ret = data.constructor.newReturn(node);
-            // 将 ReturnNode 连接到 endBlock 用于遍历，但也要确保它在当前块中
-            data.constructor.graph().endBlock().addPredecessor(ret);
-            // 将 ReturnNode 添加到当前块中，确保块包含它的内容
-            data.currentBlock().addPredecessor(ret);
+            data.constructor.newReturn(node);
+            startUnreachableBlock(data);
             popSpan();
             return NOT_AN_EXPRESSION;
         }
@@ -276,10 +275,33 @@ public class SsaTranslation {
         public Optional<Node> visit(TernaryTree ternaryTree, SsaTranslation data) {
             pushSpan(ternaryTree);
             Node condition = ternaryTree.condition().accept(this, data).orElseThrow();
+            if (isSelectable(ternaryTree.thenExpr()) && isSelectable(ternaryTree.elseExpr())) {
+                // computing both is cheaper than a branch that may be mispredicted
+                Node thenExpr = ternaryTree.thenExpr().accept(this, data).orElseThrow();
+                Node elseExpr = ternaryTree.elseExpr().accept(this, data).orElseThrow();
+                Node select = data.constructor.newSelect(condition, thenExpr, elseExpr);
+                popSpan();
+                return Optional.of(select);
+            }
+
+            Block thenBlock = data.constructor.newBlock();
+            Block elseBlock = data.constructor.newBlock();
+            Block mergeBlock = data.constructor.newBlock();
+            data.constructor.newBranch(condition, thenBlock, elseBlock);
+            data.constructor.sealBlock(thenBlock);
+            data.constructor.sealBlock(elseBlock);
+
+            // the operands of the phi must be in the same order as the predecessors of the merge block
+            data.constructor.setCurrentBlock(thenBlock);
             Node thenExpr = ternaryTree.thenExpr().accept(this, data).orElseThrow();
+            data.constructor.newJump(mergeBlock);
+
+            data.constructor.setCurrentBlock(elseBlock);
             Node elseExpr = ternaryTree.elseExpr().accept(this, data).orElseThrow();
-            
-            // Create a phi node for the result
+            data.constructor.newJump(mergeBlock);
+
+            data.constructor.sealBlock(mergeBlock);
+            data.constructor.setCurrentBlock(mergeBlock);
             Phi phi = data.constructor.newPhi();
             phi.appendOperand(thenExpr);
             phi.appendOperand(elseExpr);
@@ -288,60 +310,53 @@ public class SsaTranslation {
             return Optional.of(phi);
         }
 
+        /// {@return whether the arm of a ternary may be computed even if it is not chosen:
+        /// it has no side effects and takes at most one arithmetic or bitwise operation}
+        private static boolean isSelectable(ExpressionTree expression) {
+            return switch (expression) {
+                case NegateTree negate -> isOperand(negate.expression());
+                case BinaryOperationTree binary -> switch (binary.operatorType()) {
+                    case PLUS, MINUS, MUL, BITWISE_AND, BITWISE_OR, BITWISE_XOR ->
+                        isOperand(binary.lhs()) && isOperand(binary.rhs());
+                    // division may trap, everything else is left to branches as well
+                    default -> false;
+                };
+                default -> isOperand(expression);
+            };
+        }
+
+        private static boolean isOperand(ExpressionTree expression) {
+            return expression instanceof LiteralTree || expression instanceof IdentExpressionTree;
+        }
+
         @Override
         public Optional<Node> visit(IfTree ifTree, SsaTranslation data) {
             pushSpan(ifTree);
             Node condition = ifTree.condition().accept(this, data).orElseThrow();
             
-            Block currentBlock = data.currentBlock();
-            Block thenBlock = new Block(data.constructor.graph());
-            Block elseBlock = new Block(data.constructor.graph());
-            Block mergeBlock = new Block(data.constructor.graph());
+            Block thenBlock = data.constructor.newBlock();
+            Block elseBlock = data.constructor.newBlock();
+            Block mergeBlock = data.constructor.newBlock();
             
-            // Create branch
-            Node branch = data.constructor.newBranch(condition, thenBlock, elseBlock);
-            
-            // Connect the branch to endBlock so it can be reached during traversal
-            data.constructor.graph().endBlock().addPredecessor(branch);
-            
-            // Set up block predecessor relationships
-            thenBlock.addPredecessor(currentBlock);
-            elseBlock.addPredecessor(currentBlock);
+            data.constructor.newBranch(condition, thenBlock, elseBlock);
+            // both branch targets only have the branch as predecessor
+            data.constructor.sealBlock(thenBlock);
+            data.constructor.sealBlock(elseBlock);
             
             // Visit then branch
             data.constructor.setCurrentBlock(thenBlock);
             ifTree.thenBranch().accept(this, data);
-            // Only jump to merge block if we haven't returned
-            if (!(ifTree.thenBranch() instanceof ReturnTree)) {
-                data.constructor.newJump(mergeBlock);
-                mergeBlock.addPredecessor(thenBlock);
-            }
+            data.constructor.newJump(mergeBlock);
             
             // Visit else branch (if it exists)
             data.constructor.setCurrentBlock(elseBlock);
             if (ifTree.elseBranch() != null) {
                 ifTree.elseBranch().accept(this, data);
-                // Only jump to merge block if we haven't returned
-                if (!(ifTree.elseBranch() instanceof ReturnTree)) {
-                    data.constructor.newJump(mergeBlock);
-                    mergeBlock.addPredecessor(elseBlock);
-                }
-            } else {
-                // No else branch, just jump to merge
-                data.constructor.newJump(mergeBlock);
-                mergeBlock.addPredecessor(elseBlock);
             }
+            data.constructor.newJump(mergeBlock);
             
-            // Seal blocks now that their predecessors are known
-            data.constructor.sealBlock(thenBlock);
-            data.constructor.sealBlock(elseBlock);
             data.constructor.sealBlock(mergeBlock);
-            
-            // Set merge block as current only if we need it
-            if (!(ifTree.thenBranch() instanceof ReturnTree) || 
-                (ifTree.elseBranch() != null && !(ifTree.elseBranch() instanceof ReturnTree))) {
-                data.constructor.setCurrentBlock(mergeBlock);
-            }
+            data.constructor.setCurrentBlock(mergeBlock);
             popSpan();
             return NOT_AN_EXPRESSION;
         }
@@ -349,30 +364,29 @@ public class SsaTranslation {
         @Override
         public Optional<Node> visit(WhileTree whileTree, SsaTranslation data) {
             pushSpan(whileTree);
-            Block headerBlock = new Block(data.constructor.graph());
-            Block bodyBlock = new Block(data.constructor.graph());
-            Block exitBlock = new Block(data.constructor.graph());
-            
-            // Push loop context onto stack
-            loopStack.push(new LoopContext(headerBlock, exitBlock));
+            Block headerBlock = data.constructor.newBlock();
+            Block bodyBlock = data.constructor.newBlock();
+            Block exitBlock = data.constructor.newBlock();
             
             // Jump to header
             data.constructor.newJump(headerBlock);
             
-            // Visit header
+            // Visit header, it stays unsealed until the back edges are known
             data.constructor.setCurrentBlock(headerBlock);
             Node condition = whileTree.condition().accept(this, data).orElseThrow();
             data.constructor.newBranch(condition, bodyBlock, exitBlock);
+            data.constructor.sealBlock(bodyBlock);
             
             // Visit body
+            loopStack.push(new LoopContext(headerBlock, exitBlock));
             data.constructor.setCurrentBlock(bodyBlock);
             whileTree.body().accept(this, data);
             data.constructor.newJump(headerBlock);
-            
-            // Pop loop context from stack
             loopStack.pop();
             
-            // Set exit block as current
+            // all back edges (including continue) and all breaks are known now
+            data.constructor.sealBlock(headerBlock);
+            data.constructor.sealBlock(exitBlock);
             data.constructor.setCurrentBlock(exitBlock);
             popSpan();
             return NOT_AN_EXPRESSION;
@@ -381,68 +395,42 @@ public class SsaTranslation {
         @Override
         public Optional<Node> visit(ForTree forTree, SsaTranslation data) {
             pushSpan(forTree);
+            Block headerBlock = data.constructor.newBlock();
+            Block bodyBlock = data.constructor.newBlock();
+            Block stepBlock = data.constructor.newBlock();
+            Block exitBlock = data.constructor.newBlock();
             
-            Block currentBlock = data.currentBlock();
-            Block initBlock = new Block(data.constructor.graph());
-            Block headerBlock = new Block(data.constructor.graph());
-            Block bodyBlock = new Block(data.constructor.graph());
-            Block stepBlock = new Block(data.constructor.graph());
-            Block exitBlock = new Block(data.constructor.graph());
-            
-            // Push loop context onto stack
-            loopStack.push(new LoopContext(headerBlock, exitBlock));
-            
-            // Jump to initialization
-            data.constructor.newJump(initBlock);
-            initBlock.addPredecessor(currentBlock);
-            
-            // Visit initialization
-            data.constructor.setCurrentBlock(initBlock);
+            // Visit initialization in the current block
             if (forTree.initializer() != null) {
                 forTree.initializer().accept(this, data);
             }
             data.constructor.newJump(headerBlock);
-            headerBlock.addPredecessor(initBlock);
-            // Seal init block since it has only one predecessor
-            data.constructor.sealBlock(initBlock);
             
-            // Visit header (condition)
+            // Visit header (condition), it stays unsealed until the back edge is known
             data.constructor.setCurrentBlock(headerBlock);
             Node condition = forTree.condition().accept(this, data).orElseThrow();
-            Node branch = data.constructor.newBranch(condition, bodyBlock, exitBlock);
-            data.constructor.graph().endBlock().addPredecessor(branch);
-            bodyBlock.addPredecessor(headerBlock);
-            exitBlock.addPredecessor(headerBlock);
+            data.constructor.newBranch(condition, bodyBlock, exitBlock);
+            data.constructor.sealBlock(bodyBlock);
             
-            // Visit body
+            // Visit body, continue jumps to the step
+            loopStack.push(new LoopContext(stepBlock, exitBlock));
             data.constructor.setCurrentBlock(bodyBlock);
             forTree.body().accept(this, data);
             data.constructor.newJump(stepBlock);
-            stepBlock.addPredecessor(bodyBlock);
-            // Seal body block since it has only one predecessor (from header)
-            data.constructor.sealBlock(bodyBlock);
+            loopStack.pop();
             
             // Visit step
+            data.constructor.sealBlock(stepBlock);
             data.constructor.setCurrentBlock(stepBlock);
             if (forTree.step() != null) {
                 forTree.step().accept(this, data);
             }
             data.constructor.newJump(headerBlock);
-            headerBlock.addPredecessor(stepBlock);
-            // Seal step block since it has only one predecessor (from body)
-            data.constructor.sealBlock(stepBlock);
             
-            // Now seal header block since all its predecessors are known (init and step)
+            // all back edges and all breaks are known now
             data.constructor.sealBlock(headerBlock);
-            
-            // Pop loop context from stack
-            loopStack.pop();
-            
-            // Set exit block as current
-            data.constructor.setCurrentBlock(exitBlock);
-            // Seal exit block since it has only one predecessor (from header)
             data.constructor.sealBlock(exitBlock);
-            
+            data.constructor.setCurrentBlock(exitBlock);
             popSpan();
             return NOT_AN_EXPRESSION;
         }
@@ -457,6 +445,7 @@ public class SsaTranslation {
             
             LoopContext currentLoop = loopStack.peek();
             data.constructor.newJump(currentLoop.exitBlock);
+            startUnreachableBlock(data);
             popSpan();
             return NOT_AN_EXPRESSION;
         }
@@ -470,11 +459,21 @@ public class SsaTranslation {
             }
             
             LoopContext currentLoop = loopStack.peek();
-            data.constructor.newJump(currentLoop.headerBlock);
+            data.constructor.newJump(currentLoop.continueBlock);
+            startUnreachableBlock(data);
             popSpan();
             return NOT_AN_EXPRESSION;
         }
 
+        /// Continues translation in a fresh block without predecessors.
+        /// Statements following a return, break or continue end up there, so
+        /// every reachable block has exactly one terminator.
+        private void startUnreachableBlock(SsaTranslation data) {
+            Block block = data.constructor.newBlock();
+            data.constructor.sealBlock(block);
+            data.constructor.setCurrentBlock(block);
+        }
+
         private Node projResultDivMod(SsaTranslation data, Node divMod) {
             // make sure we actually have a div or a mod, as optimizations could
             // have changed it to something else already
@@ -485,20 +484,5 @@ public class SsaTranslation {
             data.constructor.writeCurrentSideEffect(projSideEffect);
             return data.constructor.newResultProj(divMod);
         }
-
-        private Node calculatePowerOfTwo(SsaTranslation data, Node rhs) {
-            if (rhs instanceof edu.kit.kastel.vads.compiler.ir.node.ConstIntNode constNode) {
-                // Extract the constant value for power calculation
-                int constantValue = constNode.value();
-                return data.constructor.newConstInt(1 << constantValue);
-            } else {
-                // For variable shift amounts, this is more complex
-                // Simplified: treat as x * (2 * rhs) which is not mathematically correct
-                // but at least closer than our previous implementation
-                Node two = data.constructor.newConstInt(2);
-                Node powerApprox = data.constructor.newMul(two, rhs);
-                return data.constructor.newMul(data.constructor.newConstInt(2), rhs);
-            }
-        }
     }
 }
@@ -0,0 +1,348 @@
+package edu.kit.kastel.vads.compiler.ir.cfg;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.BranchNode;
+import edu.kit.kastel.vads.compiler.ir.node.JumpNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+import edu.kit.kastel.vads.compiler.ir.node.ReturnNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/// The control flow structure of an [IrGraph] together with a schedule of its nodes.
+///
+/// Blocks are connected through their terminators: a [JumpNode] has its target block as its
+/// only predecessor, a [BranchNode] has the condition followed by the true and the false target,
+/// and a [ReturnNode] leaves the function. The predecessors of a [Block] are its predecessor blocks,
+/// in the same order as the operands of its [Phi]s.
+///
+/// Only blocks reachable from the start block are part of the control flow graph. They are
+/// numbered in reverse postorder, so the start block has index `0` and every block comes before
+/// its successors, except along back edges.
+/// Within a block, phis come first, every other node comes after its inputs from the same block,
+/// and the terminator comes last.
+///
+/// An edge to a block that does not come later in this order is a back edge, and the header it
+/// targets starts a loop. The loop consists of all blocks that reach the back edge without passing
+/// through the header. The number of loops a block is part of is its [loop depth][#loopDepth].
+///
+/// A block dominates another one if every path from the start block to the other one passes through it.
+/// The dominators are computed with the iterative algorithm of
+/// [`A Simple, Fast Dominance Algorithm`](https://www.cs.tufts.edu/comp/150FP/archive/keith-cooper/dom14.pdf)
+/// by Cooper, Harvey and Kennedy.
+public class ControlFlowGraph {
+    private final IrGraph graph;
+    private final List<Block> blocks = new ArrayList<>();
+    private final int[] blockIndex;
+    private final List<List<Block>> successors = new ArrayList<>();
+    private final List<List<Node>> schedules = new ArrayList<>();
+    private int[] loopDepth;
+    private int[] immediateDominator;
+    private final List<List<Block>> dominatedBlocks = new ArrayList<>();
+
+    public ControlFlowGraph(IrGraph graph) {
+        this.graph = graph;
+        this.blockIndex = new int[graph.nodeCount()];
+        Arrays.fill(this.blockIndex, -1);
+
+        BitSet liveNodes = collectNodes(graph);
+        Node[] terminators = new Node[graph.nodeCount()];
+        for (int id = liveNodes.nextSetBit(0); id >= 0; id = liveNodes.nextSetBit(id + 1)) {
+            Node node = graph.node(id);
+            if (isTerminator(node) && terminators[node.block().id()] == null) {
+                terminators[node.block().id()] = node;
+            }
+        }
+        orderBlocks(terminators);
+        schedule(liveNodes, terminators);
+        computeLoopDepths();
+        computeDominators();
+    }
+
+    /// {@return the graph this control flow graph was built for}
+    public IrGraph graph() {
+        return this.graph;
+    }
+
+    /// {@return all reachable blocks in reverse postorder}
+    public List<Block> blocks() {
+        return Collections.unmodifiableList(this.blocks);
+    }
+
+    public int blockCount() {
+        return this.blocks.size();
+    }
+
+    /// {@return the position of the block in [#blocks()], or `-1` if it is unreachable}
+    public int index(Block block) {
+        return this.blockIndex[block.id()];
+    }
+
+    public boolean isReachable(Block block) {
+        return index(block) >= 0;
+    }
+
+    /// {@return the blocks control flow may continue at after the given block}
+    public List<Block> successors(Block block) {
+        return this.successors.get(index(block));
+    }
+
+    /// {@return the predecessor blocks in phi operand order, which may include unreachable blocks}
+    public List<Block> predecessors(Block block) {
+        List<Block> predecessors = new ArrayList<>();
+        for (Node predecessor : block.predecessors()) {
+            predecessors.add(predecessor.block());
+        }
+        return predecessors;
+    }
+
+    /// {@return the scheduled nodes of the given block}
+    public List<Node> nodes(Block block) {
+        return this.schedules.get(index(block));
+    }
+
+    /// {@return the number of loops the block is part of, `0` outside of any loop}
+    public int loopDepth(Block block) {
+        return this.loopDepth[index(block)];
+    }
+
+    /// {@return the closest block that dominates the given one, `null` for the start block}
+    public Block immediateDominator(Block block) {
+        int index = index(block);
+        return index == 0 ? null : this.blocks.get(this.immediateDominator[index]);
+    }
+
+    /// {@return the blocks whose immediate dominator is the given block, i.e. its children in the
+    /// dominator tree, in reverse postorder}
+    public List<Block> dominatedBlocks(Block block) {
+        return Collections.unmodifiableList(this.dominatedBlocks.get(index(block)));
+    }
+
+    /// {@return the last scheduled node of the block if it ends control flow in it, `null` otherwise}
+    public Node terminator(Block block) {
+        List<Node> nodes = nodes(block);
+        if (nodes.isEmpty() || !isTerminator(nodes.getLast())) {
+            return null;
+        }
+        return nodes.getLast();
+    }
+
+    private static boolean isTerminator(Node node) {
+        return node instanceof JumpNode || node instanceof BranchNode || node instanceof ReturnNode;
+    }
+
+    private static List<Block> targets(Node terminator) {
+        return switch (terminator) {
+            case JumpNode jump -> List.of((Block) jump.predecessor(0));
+            case BranchNode branch -> List.of((Block) branch.predecessor(1), (Block) branch.predecessor(2));
+            case null, default -> List.of();
+        };
+    }
+
+    /// All terminators hang off the end block, so everything that has an effect can be
+    /// reached from there. Nodes that are not reachable are dead.
+    private static BitSet collectNodes(IrGraph graph) {
+        BitSet seen = new BitSet(graph.nodeCount());
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(graph.endBlock());
+        seen.set(graph.endBlock().id());
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            for (Node predecessor : node.predecessors()) {
+                if (!seen.get(predecessor.id())) {
+                    seen.set(predecessor.id());
+                    stack.push(predecessor);
+                }
+            }
+        }
+        return seen;
+    }
+
+    private void orderBlocks(Node[] terminators) {
+        List<Block> postorder = new ArrayList<>();
+        BitSet visited = new BitSet(this.graph.nodeCount());
+        // iterative depth-first search, each stack entry is a block and the index of its next successor
+        Deque<Block> blockStack = new ArrayDeque<>();
+        Deque<Integer> indexStack = new ArrayDeque<>();
+        Block start = this.graph.startBlock();
+        visited.set(start.id());
+        blockStack.push(start);
+        indexStack.push(0);
+        while (!blockStack.isEmpty()) {
+            Block block = blockStack.peek();
+            int next = indexStack.pop();
+            List<Block> targets = targets(terminators[block.id()]);
+            if (next < targets.size()) {
+                indexStack.push(next + 1);
+                Block target = targets.get(next);
+                if (!visited.get(target.id())) {
+                    visited.set(target.id());
+                    blockStack.push(target);
+                    indexStack.push(0);
+                }
+            } else {
+                blockStack.pop();
+                postorder.add(block);
+            }
+        }
+        for (Block block : postorder.reversed()) {
+            this.blockIndex[block.id()] = this.blocks.size();
+            this.blocks.add(block);
+            this.successors.add(targets(terminators[block.id()]));
+        }
+    }
+
+    private void computeLoopDepths() {
+        this.loopDepth = new int[this.blocks.size()];
+        // the blocks of the loop starting at each header, multiple back edges to one header form a single loop
+        BitSet[] loops = new BitSet[this.blocks.size()];
+        for (int latch = 0; latch < this.blocks.size(); latch++) {
+            for (Block header : this.successors.get(latch)) {
+                int headerIndex = index(header);
+                if (headerIndex > latch) {
+                    continue;
+                }
+                if (loops[headerIndex] == null) {
+                    loops[headerIndex] = new BitSet(this.blocks.size());
+                    loops[headerIndex].set(headerIndex);
+                }
+                BitSet body = loops[headerIndex];
+                Deque<Integer> worklist = new ArrayDeque<>();
+                if (!body.get(latch)) {
+                    body.set(latch);
+                    worklist.push(latch);
+                }
+                while (!worklist.isEmpty()) {
+                    for (Block predecessor : predecessors(this.blocks.get(worklist.pop()))) {
+                        int predecessorIndex = index(predecessor);
+                        if (predecessorIndex >= 0 && !body.get(predecessorIndex)) {
+                            body.set(predecessorIndex);
+                            worklist.push(predecessorIndex);
+                        }
+                    }
+                }
+            }
+        }
+        for (BitSet body : loops) {
+            if (body == null) {
+                continue;
+            }
+            for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1)) {
+                this.loopDepth[i]++;
+            }
+        }
+    }
+
+    private void computeDominators() {
+        int[] idom = new int[this.blocks.size()];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < this.blocks.size(); i++) {
+                int newIdom = -1;
+                for (Block predecessor : predecessors(this.blocks.get(i))) {
+                    int predecessorIndex = index(predecessor);
+                    if (predecessorIndex < 0 || idom[predecessorIndex] < 0) {
+                        continue;
+                    }
+                    newIdom = newIdom < 0 ? predecessorIndex : intersect(idom, predecessorIndex, newIdom);
+                }
+                if (idom[i] != newIdom) {
+                    idom[i] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        this.immediateDominator = idom;
+        for (int i = 0; i < this.blocks.size(); i++) {
+            this.dominatedBlocks.add(new ArrayList<>());
+        }
+        for (int i = 1; i < this.blocks.size(); i++) {
+            this.dominatedBlocks.get(idom[i]).add(this.blocks.get(i));
+        }
+    }
+
+    /// {@return the closest common dominator of two blocks, walking up from the one later in reverse postorder}
+    private static int intersect(int[] idom, int a, int b) {
+        while (a != b) {
+            while (a > b) {
+                a = idom[a];
+            }
+            while (b > a) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    private void schedule(BitSet liveNodes, Node[] terminators) {
+        List<List<Node>> members = new ArrayList<>();
+        for (int i = 0; i < this.blocks.size(); i++) {
+            members.add(new ArrayList<>());
+            this.schedules.add(new ArrayList<>());
+        }
+        for (int id = liveNodes.nextSetBit(0); id >= 0; id = liveNodes.nextSetBit(id + 1)) {
+            Node node = this.graph.node(id);
+            int index = this.blockIndex[node.block().id()];
+            if (index >= 0 && !(node instanceof Block)) {
+                members.get(index).add(node);
+            }
+        }
+
+        BitSet placed = new BitSet(this.graph.nodeCount());
+        for (int i = 0; i < this.blocks.size(); i++) {
+            List<Node> schedule = this.schedules.get(i);
+            for (Node node : members.get(i)) {
+                if (node instanceof Phi) {
+                    schedule.add(node);
+                    placed.set(node.id());
+                }
+            }
+            Node terminator = terminators[this.blocks.get(i).id()];
+            for (Node node : members.get(i)) {
+                if (node != terminator) {
+                    placeAfterInputs(node, schedule, placed);
+                }
+            }
+            if (terminator != null) {
+                placeAfterInputs(terminator, schedule, placed);
+            }
+        }
+    }
+
+    /// Appends the node to the schedule, after all its unplaced inputs from the same block.
+    private static void placeAfterInputs(Node root, List<Node> schedule, BitSet placed) {
+        if (placed.get(root.id())) {
+            return;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.peek();
+            boolean ready = true;
+            for (Node predecessor : node.predecessors()) {
+                if (predecessor.block() == node.block() && !(predecessor instanceof Block)
+                    && !placed.get(predecessor.id())) {
+                    stack.push(predecessor);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                if (!placed.get(node.id())) {
+                    placed.set(node.id());
+                    schedule.add(node);
+                }
+            }
+        }
+    }
+}
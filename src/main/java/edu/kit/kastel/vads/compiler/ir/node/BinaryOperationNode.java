@@ -1,6 +1,6 @@
 package edu.kit.kastel.vads.compiler.ir.node;
 
-public sealed abstract class BinaryOperationNode extends Node permits AddNode, DivNode, ModNode, MulNode, SubNode {
+public sealed abstract class BinaryOperationNode extends Node permits AddNode, AndNode, CompareNode, DivNode, ModNode, MulNode, OrNode, SarNode, ShlNode, SubNode, XorNode {
     public static final int LEFT = 0;
     public static final int RIGHT = 1;
 
@@ -13,7 +13,7 @@ public sealed abstract class BinaryOperationNode extends Node permits AddNode, D
     }
 
     protected static int commutativeHashCode(BinaryOperationNode node) {
-        int h = node.block().hashCode();
+        int h = node.block().id();
         // commutative operation: we want h(op(x, y)) == h(op(y, x))
         h += 31 * (predecessorHash(node, LEFT) ^ predecessorHash(node, RIGHT));
         return h;
@@ -23,7 +23,7 @@ public sealed abstract class BinaryOperationNode extends Node permits AddNode, D
         if (!(bObj instanceof BinaryOperationNode b)) {
             return false;
         }
-        if (a.getClass() != b.getClass()) {
+        if (a.getClass() != b.getClass() || a.block() != b.block()) {
             return false;
         }
         if (a.predecessor(LEFT) == b.predecessor(LEFT) && a.predecessor(RIGHT) == b.predecessor(RIGHT)) {
@@ -39,12 +39,14 @@ public sealed abstract class BinaryOperationNode extends Node permits AddNode, D
             return false;
         }
         return obj.getClass() == this.getClass()
+            && this.block() == binOp.block()
             && this.predecessor(LEFT) == binOp.predecessor(LEFT)
             && this.predecessor(RIGHT) == binOp.predecessor(RIGHT);
     }
 
     @Override
     public int hashCode() {
-        return (predecessorHash(this, LEFT) * 31 + predecessorHash(this, RIGHT)) ^ this.getClass().hashCode();
+        return ((block().id() * 31 + predecessorHash(this, LEFT)) * 31 + predecessorHash(this, RIGHT))
+            ^ this.getClass().hashCode();
     }
 }
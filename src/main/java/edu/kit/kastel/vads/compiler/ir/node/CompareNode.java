@@ -0,0 +1,29 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+/// Compares its operands as signed integers and yields `1` if `left relation right` holds, `0` otherwise.
+public final class CompareNode extends BinaryOperationNode {
+    private final Relation relation;
+
+    public CompareNode(Block block, Node left, Node right, Relation relation) {
+        super(block, left, right);
+        this.relation = relation;
+    }
+
+    public Relation relation() {
+        return this.relation;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return super.equals(obj) && ((CompareNode) obj).relation == this.relation;
+    }
+
+    @Override
+    protected String info() {
+        return "[" + this.relation + "]";
+    }
+
+    public enum Relation {
+        LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL
+    }
+}
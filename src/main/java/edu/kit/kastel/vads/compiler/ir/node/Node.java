@@ -8,15 +8,17 @@ import java.util.ArrayList;
 import java.util.List;
 
 /// The base class for all nodes.
-public sealed abstract class Node permits BinaryOperationNode, Block, BranchNode, ConstIntNode, JumpNode, Phi, ProjNode, ReturnNode, StartNode {
+public sealed abstract class Node permits BinaryOperationNode, Block, BranchNode, ConstIntNode, JumpNode, NotNode, Phi, ProjNode, ReturnNode, SelectNode, StartNode {
     private final IrGraph graph;
     private final Block block;
     private final List<Node> predecessors = new ArrayList<>();
     private final DebugInfo debugInfo;
+    private final int id;
 
     protected Node(Block block, Node... predecessors) {
         this.graph = block.graph();
         this.block = block;
+        this.id = this.graph.registerNode(this);
         this.predecessors.addAll(List.of(predecessors));
         for (Node predecessor : predecessors) {
             graph.registerSuccessor(predecessor, this);
@@ -28,6 +30,7 @@ public sealed abstract class Node permits BinaryOperationNode, Block, BranchNode
         assert this.getClass() == Block.class : "must be used by Block only";
         this.graph = graph;
         this.block = (Block) this;
+        this.id = graph.registerNode(this);
         this.debugInfo = DebugInfo.NoInfo.INSTANCE;
     }
 
@@ -39,13 +42,22 @@ public sealed abstract class Node permits BinaryOperationNode, Block, BranchNode
         return this.block;
     }
 
+    /// {@return the dense id of this node within its graph}
+    /// @see IrGraph#nodeCount()
+    public final int id() {
+        return this.id;
+    }
+
     public final List<? extends Node> predecessors() {
         return List.copyOf(this.predecessors);
     }
 
     public final void setPredecessor(int idx, Node node) {
-        this.graph.removeSuccessor(this.predecessors.get(idx), this);
-        this.predecessors.set(idx, node);
+        Node old = this.predecessors.set(idx, node);
+        // an operand used twice, as in x + x, stays a predecessor through its other slot
+        if (this.predecessors.stream().noneMatch(predecessor -> predecessor == old)) {
+            this.graph.removeSuccessor(old, this);
+        }
         this.graph.registerSuccessor(node, this);
     }
 
@@ -72,6 +84,6 @@ public sealed abstract class Node permits BinaryOperationNode, Block, BranchNode
     }
 
     protected static int predecessorHash(Node node, int predecessor) {
-        return System.identityHashCode(node.predecessor(predecessor));
+        return node.predecessor(predecessor).id();
     }
 }
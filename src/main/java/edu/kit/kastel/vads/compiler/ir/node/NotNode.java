@@ -0,0 +1,22 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+/// Flips every bit of its operand.
+public final class NotNode extends Node {
+    public static final int OPERAND = 0;
+
+    public NotNode(Block block, Node operand) {
+        super(block, operand);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NotNode not
+            && this.block() == not.block()
+            && this.predecessor(OPERAND) == not.predecessor(OPERAND);
+    }
+
+    @Override
+    public int hashCode() {
+        return (block().id() * 31 + predecessorHash(this, OPERAND)) ^ NotNode.class.hashCode();
+    }
+}
@@ -9,6 +9,10 @@ public final class ProjNode extends Node {
         this.projectionInfo = projectionInfo;
     }
 
+    public ProjectionInfo projectionInfo() {
+        return this.projectionInfo;
+    }
+
     @Override
     protected String info() {
         return this.projectionInfo.toString();
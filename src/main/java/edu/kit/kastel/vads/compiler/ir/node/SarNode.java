@@ -0,0 +1,9 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+/// Shifts the left operand to the right by the right operand, of which only the lowest five bits count.
+/// The sign bit is shifted in, so the result is rounded towards negative infinity.
+public final class SarNode extends BinaryOperationNode {
+    public SarNode(Block block, Node left, Node right) {
+        super(block, left, right);
+    }
+}
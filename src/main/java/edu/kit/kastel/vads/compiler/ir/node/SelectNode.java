@@ -0,0 +1,30 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+/// Yields the true value if the condition is not `0`, the false value otherwise.
+/// Both values are computed before, so a select needs no control flow.
+public final class SelectNode extends Node {
+    public static final int CONDITION = 0;
+    public static final int TRUE_VALUE = 1;
+    public static final int FALSE_VALUE = 2;
+
+    public SelectNode(Block block, Node condition, Node trueValue, Node falseValue) {
+        super(block, condition, trueValue, falseValue);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SelectNode select)) {
+            return false;
+        }
+        return this.block() == select.block()
+            && this.predecessor(CONDITION) == select.predecessor(CONDITION)
+            && this.predecessor(TRUE_VALUE) == select.predecessor(TRUE_VALUE)
+            && this.predecessor(FALSE_VALUE) == select.predecessor(FALSE_VALUE);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((block().id() * 31 + predecessorHash(this, CONDITION)) * 31 + predecessorHash(this, TRUE_VALUE)) * 31
+            + predecessorHash(this, FALSE_VALUE);
+    }
+}
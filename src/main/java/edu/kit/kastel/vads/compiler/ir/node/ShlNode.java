@@ -0,0 +1,8 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+/// Shifts the left operand to the left by the right operand, of which only the lowest five bits count.
+public final class ShlNode extends BinaryOperationNode {
+    public ShlNode(Block block, Node left, Node right) {
+        super(block, left, right);
+    }
+}
@@ -0,0 +1,96 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.node.AndNode;
+import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.OrNode;
+import edu.kit.kastel.vads.compiler.ir.node.XorNode;
+
+/// Replaces bitwise operations whose result follows from the identities of their operands alone:
+/// - `x & 0` is `0`, `x & -1` and `x & x` are `x`
+/// - `x | 0` and `x | x` are `x`, `x | -1` is `-1`
+/// - `x ^ 0` is `x`, `x ^ x` is `0`
+/// - `~~x` is `x`
+///
+/// Operations on constants only are left to [ConstantFolding], which runs before.
+/// All other nodes are passed on to the next optimizer, usually [LocalValueNumbering].
+/// A replaced node is removed from the successors of its operands, so it doesn't count as a user.
+public class AlgebraicSimplification implements Optimizer {
+    private final Optimizer next;
+
+    public AlgebraicSimplification(Optimizer next) {
+        this.next = next;
+    }
+
+    @Override
+    public Node transform(Node node) {
+        Node simplified = simplify(node);
+        if (simplified == node) {
+            return this.next.transform(node);
+        }
+        for (Node predecessor : node.predecessors()) {
+            node.graph().removeSuccessor(predecessor, node);
+        }
+        return simplified;
+    }
+
+    private Node simplify(Node node) {
+        return switch (node) {
+            case AndNode and -> {
+                Node left = and.predecessor(BinaryOperationNode.LEFT);
+                Node right = and.predecessor(BinaryOperationNode.RIGHT);
+                if (isConstant(left, 0) || isConstant(right, -1) || left == right) {
+                    yield left;
+                }
+                if (isConstant(right, 0) || isConstant(left, -1)) {
+                    yield right;
+                }
+                yield node;
+            }
+            case OrNode or -> {
+                Node left = or.predecessor(BinaryOperationNode.LEFT);
+                Node right = or.predecessor(BinaryOperationNode.RIGHT);
+                if (isConstant(right, 0) || isConstant(left, -1) || left == right) {
+                    yield left;
+                }
+                if (isConstant(left, 0) || isConstant(right, -1)) {
+                    yield right;
+                }
+                yield node;
+            }
+            case XorNode xor -> {
+                Node left = xor.predecessor(BinaryOperationNode.LEFT);
+                Node right = xor.predecessor(BinaryOperationNode.RIGHT);
+                if (left == right) {
+                    yield constant(node, 0);
+                }
+                if (isConstant(right, 0)) {
+                    yield left;
+                }
+                if (isConstant(left, 0)) {
+                    yield right;
+                }
+                yield node;
+            }
+            case NotNode not -> {
+                Node operand = not.predecessor(NotNode.OPERAND);
+                if (operand instanceof NotNode inner) {
+                    yield inner.predecessor(NotNode.OPERAND);
+                }
+                yield node;
+            }
+            default -> node;
+        };
+    }
+
+    private static boolean isConstant(Node node, int value) {
+        return node instanceof ConstIntNode constant && constant.value() == value;
+    }
+
+    private Node constant(Node replaced, int value) {
+        // constants are always placed in the start block, see GraphConstructor#newConstInt
+        return this.next.transform(new ConstIntNode(replaced.graph().startBlock(), value));
+    }
+}
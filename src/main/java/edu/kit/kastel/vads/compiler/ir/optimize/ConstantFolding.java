@@ -0,0 +1,100 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.node.AddNode;
+import edu.kit.kastel.vads.compiler.ir.node.AndNode;
+import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
+import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
+import edu.kit.kastel.vads.compiler.ir.node.MulNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.OrNode;
+import edu.kit.kastel.vads.compiler.ir.node.SarNode;
+import edu.kit.kastel.vads.compiler.ir.node.SelectNode;
+import edu.kit.kastel.vads.compiler.ir.node.ShlNode;
+import edu.kit.kastel.vads.compiler.ir.node.SubNode;
+import edu.kit.kastel.vads.compiler.ir.node.XorNode;
+
+/// Computes operations whose operands are all constants at compile time, with the wrap-around
+/// semantics of 32 bit two's complement integers. Shift counts are taken modulo 32, like x86 does.
+/// A select with a constant condition is replaced by the value it picks.
+///
+/// A division or modulo is only computed if it cannot trap, that is if the divisor is neither `0`
+/// nor `-1` with a dividend of `Integer.MIN_VALUE`. Otherwise it has to stay, as the trap is the
+/// observable behavior of the program.
+///
+/// All other nodes are passed on to the next optimizer, usually [AlgebraicSimplification].
+/// A replaced node is removed from the successors of its operands, so it doesn't count as a user.
+public class ConstantFolding implements Optimizer {
+    private final Optimizer next;
+
+    public ConstantFolding(Optimizer next) {
+        this.next = next;
+    }
+
+    @Override
+    public Node transform(Node node) {
+        Node folded = fold(node);
+        if (folded == node) {
+            return this.next.transform(node);
+        }
+        for (Node predecessor : node.predecessors()) {
+            node.graph().removeSuccessor(predecessor, node);
+        }
+        return folded;
+    }
+
+    private Node fold(Node node) {
+        if (node instanceof NotNode not && not.predecessor(NotNode.OPERAND) instanceof ConstIntNode operand) {
+            return constant(node, ~operand.value());
+        }
+        if (node instanceof SelectNode select
+            && select.predecessor(SelectNode.CONDITION) instanceof ConstIntNode condition) {
+            return select.predecessor(condition.value() != 0 ? SelectNode.TRUE_VALUE : SelectNode.FALSE_VALUE);
+        }
+        if (!(node instanceof BinaryOperationNode)
+            || !(node.predecessor(BinaryOperationNode.LEFT) instanceof ConstIntNode left)
+            || !(node.predecessor(BinaryOperationNode.RIGHT) instanceof ConstIntNode right)) {
+            return node;
+        }
+        int l = left.value();
+        int r = right.value();
+        return switch (node) {
+            case AddNode _ -> constant(node, l + r);
+            case SubNode _ -> constant(node, l - r);
+            case MulNode _ -> constant(node, l * r);
+            case AndNode _ -> constant(node, l & r);
+            case OrNode _ -> constant(node, l | r);
+            case XorNode _ -> constant(node, l ^ r);
+            // Java masks the shift count to 5 bits just like the x86 shift instructions
+            case ShlNode _ -> constant(node, l << r);
+            case SarNode _ -> constant(node, l >> r);
+            case CompareNode compare -> constant(node, holds(compare.relation(), l, r) ? 1 : 0);
+            case DivNode _ when canDivide(l, r) -> constant(node, l / r);
+            case ModNode _ when canDivide(l, r) -> constant(node, l % r);
+            default -> node;
+        };
+    }
+
+    private static boolean canDivide(int dividend, int divisor) {
+        return divisor != 0 && !(dividend == Integer.MIN_VALUE && divisor == -1);
+    }
+
+    private static boolean holds(CompareNode.Relation relation, int left, int right) {
+        return switch (relation) {
+            case LESS -> left < right;
+            case LESS_EQUAL -> left <= right;
+            case GREATER -> left > right;
+            case GREATER_EQUAL -> left >= right;
+            case EQUAL -> left == right;
+            case NOT_EQUAL -> left != right;
+        };
+    }
+
+    private Node constant(Node replaced, int value) {
+        // constants are always placed in the start block, see GraphConstructor#newConstInt
+        return this.next.transform(new ConstIntNode(replaced.graph().startBlock(), value));
+    }
+}
@@ -0,0 +1,184 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.AddNode;
+import edu.kit.kastel.vads.compiler.ir.node.AndNode;
+import edu.kit.kastel.vads.compiler.ir.node.BinaryOperationNode;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.CompareNode;
+import edu.kit.kastel.vads.compiler.ir.node.ConstIntNode;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
+import edu.kit.kastel.vads.compiler.ir.node.MulNode;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.NotNode;
+import edu.kit.kastel.vads.compiler.ir.node.OrNode;
+import edu.kit.kastel.vads.compiler.ir.node.ProjNode;
+import edu.kit.kastel.vads.compiler.ir.node.SelectNode;
+import edu.kit.kastel.vads.compiler.ir.node.XorNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Replaces a node by an equivalent node of a dominating block, walking the dominator tree as in
+/// section 4 of [`Value Numbering`](https://doi.org/10.1002/(SICI)1097-024X(199706)27:6%3C701::AID-SPE104%3E3.0.CO;2-0)
+/// by Briggs, Cooper and Simpson.
+///
+/// [LocalValueNumbering] only finds equal nodes, which includes their block. Here, a node is looked up
+/// by its kind and its operands alone, among the nodes of the blocks that dominate it. A computation
+/// that is repeated inside a branch or after a merge reuses the result from before the branch.
+/// Before the lookup, a node runs through [ConstantFolding] and [AlgebraicSimplification] again,
+/// as earlier passes may have made its operands constant.
+///
+/// A division or modulo may trap, so it is never moved or numbered like a value. It only replaces another
+/// one that has the same operands and directly follows it on the side effect edge: if the first
+/// did not trap, the second can't either, and nothing happened in between.
+public class GlobalValueNumbering implements GraphPass {
+
+    @Override
+    public String name() {
+        return "global-value-numbering";
+    }
+
+    @Override
+    public void run(IrGraph graph) {
+        new Walk(graph).run();
+    }
+
+    private static final class Walk {
+        private final IrGraph graph;
+        private final ControlFlowGraph cfg;
+        private final Map<Key, Node> available = new HashMap<>();
+        // the keys entered for a block, removed again once its dominator subtree is done
+        private final Map<Block, List<Key>> entered = new HashMap<>();
+        private final Optimizer simplifier = new ConstantFolding(new AlgebraicSimplification(this::number));
+
+        Walk(IrGraph graph) {
+            this.graph = graph;
+            this.cfg = new ControlFlowGraph(graph);
+        }
+
+        void run() {
+            // each stack entry is visited twice, first to number the block and then to leave it
+            Deque<Block> stack = new ArrayDeque<>();
+            Deque<Boolean> leaving = new ArrayDeque<>();
+            stack.push(this.graph.startBlock());
+            leaving.push(false);
+            while (!stack.isEmpty()) {
+                Block block = stack.pop();
+                if (leaving.pop()) {
+                    for (Key key : this.entered.getOrDefault(block, List.of())) {
+                        this.available.remove(key);
+                    }
+                    continue;
+                }
+                stack.push(block);
+                leaving.push(true);
+                visit(block);
+                for (Block dominated : this.cfg.dominatedBlocks(block).reversed()) {
+                    stack.push(dominated);
+                    leaving.push(false);
+                }
+            }
+        }
+
+        private void visit(Block block) {
+            for (Node node : this.cfg.nodes(block)) {
+                if (node instanceof DivNode || node instanceof ModNode) {
+                    mergeDivision((BinaryOperationNode) node);
+                } else if (isValue(node)) {
+                    Node replacement = this.simplifier.transform(node);
+                    if (replacement != node) {
+                        this.graph.replaceUses(node, replacement);
+                        this.graph.removeNode(node);
+                    }
+                }
+            }
+        }
+
+        /// The end of the optimizer chain: {@return the available node with the same key, or the node itself}
+        private Node number(Node node) {
+            Key key = Key.of(node);
+            Node existing = this.available.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            this.available.put(key, node);
+            // new constants are placed in the start block, which is only left at the very end
+            this.entered.computeIfAbsent(node.block(), _ -> new ArrayList<>()).add(key);
+            return node;
+        }
+
+        private void mergeDivision(BinaryOperationNode division) {
+            int sideEffectIndex = division instanceof DivNode ? DivNode.SIDE_EFFECT : ModNode.SIDE_EFFECT;
+            if (!(division.predecessor(sideEffectIndex) instanceof ProjNode sideEffect)
+                || sideEffect.projectionInfo() != ProjNode.SimpleProjectionInfo.SIDE_EFFECT) {
+                return;
+            }
+            Node previous = sideEffect.predecessor(ProjNode.IN);
+            if (previous.getClass() != division.getClass()
+                || previous.predecessor(BinaryOperationNode.LEFT) != division.predecessor(BinaryOperationNode.LEFT)
+                || previous.predecessor(BinaryOperationNode.RIGHT) != division.predecessor(BinaryOperationNode.RIGHT)) {
+                return;
+            }
+            Node previousResult = resultOf(previous);
+            if (previousResult == null) {
+                return;
+            }
+            for (Node projection : this.graph.successors(division)) {
+                if (projection instanceof ProjNode proj) {
+                    boolean isResult = proj.projectionInfo() == ProjNode.SimpleProjectionInfo.RESULT;
+                    this.graph.replaceUses(proj, isResult ? previousResult : sideEffect);
+                    this.graph.removeNode(proj);
+                }
+            }
+            this.graph.removeNode(division);
+        }
+
+        private Node resultOf(Node division) {
+            for (Node successor : this.graph.successors(division)) {
+                if (successor instanceof ProjNode proj && proj.projectionInfo() == ProjNode.SimpleProjectionInfo.RESULT) {
+                    return proj;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isValue(Node node) {
+            return node instanceof BinaryOperationNode || node instanceof NotNode || node instanceof SelectNode
+                || node instanceof ConstIntNode;
+        }
+    }
+
+    /// What makes two nodes equivalent regardless of their block: their class, the ids of their operands
+    /// and any further attribute, like the relation of a comparison or the value of a constant.
+    private record Key(Class<? extends Node> kind, int attribute, List<Integer> operands) {
+
+        static Key of(Node node) {
+            List<Integer> operands = new ArrayList<>();
+            for (Node operand : node.predecessors()) {
+                operands.add(operand.id());
+            }
+            if (isCommutative(node) && operands.get(0) > operands.get(1)) {
+                Collections.swap(operands, 0, 1);
+            }
+            int attribute = switch (node) {
+                case CompareNode compare -> compare.relation().ordinal();
+                case ConstIntNode constant -> constant.value();
+                default -> 0;
+            };
+            return new Key(node.getClass(), attribute, operands);
+        }
+
+        private static boolean isCommutative(Node node) {
+            return node instanceof AddNode || node instanceof MulNode || node instanceof AndNode
+                || node instanceof OrNode || node instanceof XorNode;
+        }
+    }
+}
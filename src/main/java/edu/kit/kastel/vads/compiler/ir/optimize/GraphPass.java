@@ -0,0 +1,17 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+
+/// An optimization that runs on a whole [IrGraph] once its construction is finished,
+/// as opposed to an [Optimizer] that sees every node right when it is created.
+///
+/// Like [LocalValueNumbering] during construction, a pass must leave no two distinct live nodes
+/// that are [equal][edu.kit.kastel.vads.compiler.ir.node.Node#equals], as the backend keeps
+/// nodes in hash based collections.
+public interface GraphPass {
+
+    /// {@return the name of the pass, as shown in the [statistics][PassStatistics]}
+    String name();
+
+    void run(IrGraph graph);
+}
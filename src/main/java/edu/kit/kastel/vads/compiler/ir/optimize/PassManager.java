@@ -0,0 +1,94 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/// Runs the optimizations of a function: the on-the-fly [Optimizer]s while its graph is constructed,
+/// then the [GraphPass]es on the finished graph, in the order they were given.
+///
+/// The named pipelines of [#forLevel] trade compile time against code quality:
+/// - `0` only numbers values, as the backend relies on equal nodes being the same
+/// - `1` folds constants, simplifies and numbers values while constructing, then removes trivial phis,
+///   so variables a loop only reads are not kept in a register across it
+/// - `2` additionally numbers values across blocks
+///
+/// If statistics are collected, every pass of every function records its wall time and the number of
+/// live nodes before and after it. Counting the nodes walks the graph, so it is not free.
+public final class PassManager {
+    private final Supplier<Optimizer> optimizers;
+    private final List<GraphPass> passes;
+    private final boolean collectStatistics;
+    private final List<PassStatistics> statistics = new ArrayList<>();
+
+    /// @param optimizers creates the chain of on-the-fly optimizers, once for every function
+    /// @param passes the whole-graph passes, in the order they run
+    public PassManager(Supplier<Optimizer> optimizers, List<GraphPass> passes, boolean collectStatistics) {
+        this.optimizers = optimizers;
+        this.passes = List.copyOf(passes);
+        this.collectStatistics = collectStatistics;
+    }
+
+    /// {@return the pipeline for the optimization level `-O<level>`}
+    /// @throws IllegalArgumentException if the level is not `0`, `1` or `2`
+    public static PassManager forLevel(int level, boolean collectStatistics) {
+        return switch (level) {
+            case 0 -> new PassManager(LocalValueNumbering::new, List.of(), collectStatistics);
+            case 1 -> new PassManager(PassManager::onTheFly, List.of(new TrivialPhiElimination()), collectStatistics);
+            case 2 -> new PassManager(
+                PassManager::onTheFly,
+                List.of(new TrivialPhiElimination(), new GlobalValueNumbering()),
+                collectStatistics
+            );
+            default -> throw new IllegalArgumentException("unknown optimization level " + level);
+        };
+    }
+
+    private static Optimizer onTheFly() {
+        return new ConstantFolding(new AlgebraicSimplification(new LocalValueNumbering()));
+    }
+
+    /// Constructs the graph of a function and runs all passes on it.
+    /// @param construct builds the graph, running every new node through the given optimizer
+    public IrGraph optimize(Function<Optimizer, IrGraph> construct) {
+        long start = System.nanoTime();
+        IrGraph graph = construct.apply(this.optimizers.get());
+        if (this.collectStatistics) {
+            this.statistics.add(
+                new PassStatistics(graph.name(), "construction", System.nanoTime() - start, 0, liveNodes(graph))
+            );
+        }
+        for (GraphPass pass : this.passes) {
+            if (!this.collectStatistics) {
+                pass.run(graph);
+                continue;
+            }
+            int before = liveNodes(graph);
+            long passStart = System.nanoTime();
+            pass.run(graph);
+            long nanos = System.nanoTime() - passStart;
+            this.statistics.add(new PassStatistics(graph.name(), pass.name(), nanos, before, liveNodes(graph)));
+        }
+        return graph;
+    }
+
+    /// {@return the statistics of every pass run so far, empty if they are not collected}
+    public List<PassStatistics> statistics() {
+        return Collections.unmodifiableList(this.statistics);
+    }
+
+    private static int liveNodes(IrGraph graph) {
+        ControlFlowGraph cfg = new ControlFlowGraph(graph);
+        int count = 0;
+        for (Block block : cfg.blocks()) {
+            count += cfg.nodes(block).size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,11 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+/// What one pass of a [PassManager] did to one function.
+///
+/// @param function the name of the function
+/// @param pass the name of the pass, or `construction` for building the graph with the on-the-fly optimizers
+/// @param nanos the wall time the pass took
+/// @param nodesBefore the number of live nodes before the pass
+/// @param nodesAfter the number of live nodes after the pass
+public record PassStatistics(String function, String pass, long nanos, int nodesBefore, int nodesAfter) {
+}
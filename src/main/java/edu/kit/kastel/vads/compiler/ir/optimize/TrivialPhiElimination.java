@@ -0,0 +1,84 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/// Removes phis that only ever yield one value, as described in section 3.1 of
+/// [`Simple and Efficient Construction of Static Single Assignment Form`](https://doi.org/10.1007/978-3-642-37051-9_6)
+/// by Braun et al.
+///
+/// A phi is trivial if all of its operands are either the phi itself or one other value.
+/// The construction creates such phis for every variable that is read in a loop without being
+/// written there. All uses of a trivial phi are redirected to the other value, which may make
+/// phis using it trivial in turn.
+///
+/// A node whose operand was redirected may become [equal][Node#equals] to another node that already
+/// uses the new operand. It is replaced by that node the same way, so equal nodes stay identical.
+public class TrivialPhiElimination implements GraphPass {
+
+    @Override
+    public String name() {
+        return "trivial-phi-elimination";
+    }
+
+    @Override
+    public void run(IrGraph graph) {
+        ControlFlowGraph cfg = new ControlFlowGraph(graph);
+        Deque<Node> worklist = new ArrayDeque<>();
+        for (Block block : cfg.blocks()) {
+            for (Node node : cfg.nodes(block)) {
+                if (node instanceof Phi phi) {
+                    worklist.add(phi);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            Node node = worklist.poll();
+            Node replacement = node instanceof Phi phi ? onlyOperand(phi) : equalNode(graph, node);
+            if (replacement == null) {
+                continue;
+            }
+            for (Node user : graph.replaceUses(node, replacement)) {
+                if (user != node) {
+                    worklist.add(user);
+                }
+            }
+            graph.removeNode(node);
+        }
+    }
+
+    /// {@return another node that is equal to the given one, or `null` if there is none}
+    /// Equal nodes have the same operands, so it is enough to look at the users of the first one.
+    private static Node equalNode(IrGraph graph, Node node) {
+        if (node.predecessors().isEmpty()) {
+            return null;
+        }
+        for (Node other : graph.successors(node.predecessor(0))) {
+            if (other != node && other.equals(node)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /// {@return the only operand of the phi that is not the phi itself, or `null` if there is none or more than one}
+    private static Node onlyOperand(Phi phi) {
+        Node same = null;
+        for (Node operand : phi.predecessors()) {
+            if (operand == phi || operand == same) {
+                continue;
+            }
+            if (same != null) {
+                return null;
+            }
+            same = operand;
+        }
+        return same;
+    }
+}
@@ -6,9 +6,9 @@ import edu.kit.kastel.vads.compiler.ir.node.Block;
 import edu.kit.kastel.vads.compiler.ir.node.Node;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,10 +18,8 @@ import java.util.Set;
 public class GraphVizPrinter {
     private final Map<Block, Set<Node>> clusters = new HashMap<>();
     private final List<Edge> edges = new ArrayList<>();
-    private final Map<Node, Integer> ids = new HashMap<>();
     private final StringBuilder builder = new StringBuilder();
     private final IrGraph graph;
-    private int counter = 0;
 
     public GraphVizPrinter(IrGraph graph) {
         this.graph = graph;
@@ -29,15 +27,16 @@ public class GraphVizPrinter {
 
     public static String print(IrGraph graph) {
         GraphVizPrinter printer = new GraphVizPrinter(graph);
-        printer.prepare(graph.endBlock(), new HashSet<>());
+        printer.prepare(graph.endBlock(), new BitSet(graph.nodeCount()));
         printer.print();
         return printer.builder.toString();
     }
 
-    private void prepare(Node node, Set<Node> seen) {
-        if (!seen.add(node)) {
+    private void prepare(Node node, BitSet seen) {
+        if (seen.get(node.id())) {
             return;
         }
+        seen.set(node.id());
 
         if (!(node instanceof Block)) {
             this.clusters.computeIfAbsent(node.block(), _ -> Collections.newSetFromMap(new IdentityHashMap<>()))
@@ -125,7 +124,7 @@ public class GraphVizPrinter {
     }
 
     private int idFor(Node node) {
-        return this.ids.computeIfAbsent(node, _ -> this.counter++);
+        return node.id();
     }
 
     private String nameFor(Node node) {
@@ -1,6 +1,11 @@
 package edu.kit.kastel.vads.compiler.parser;
 
+import java.io.Serial;
+
 public class ParseException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     public ParseException(String message) {
         super(message);
     }
@@ -68,6 +68,12 @@ public class Printer {
                 }
             }
             case TypeTree(var type, _) -> print(type.asString());
+            case BinaryOperationTree(var lhs, var rhs, var op) when rhs == null -> {
+                this.builder.append(op);
+                print("(");
+                printTree(lhs);
+                print(")");
+            }
             case BinaryOperationTree(var lhs, var rhs, var op) -> {
                 print("(");
                 printTree(lhs);
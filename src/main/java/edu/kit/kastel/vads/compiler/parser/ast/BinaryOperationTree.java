@@ -3,12 +3,17 @@ package edu.kit.kastel.vads.compiler.parser.ast;
 import edu.kit.kastel.vads.compiler.lexer.Operator;
 import edu.kit.kastel.vads.compiler.Span;
 import edu.kit.kastel.vads.compiler.parser.visitor.Visitor;
+import org.jspecify.annotations.Nullable;
 
+/// An operation on `lhs` and `rhs`. The unary `~` and `!` only have the `lhs` operand.
 public record BinaryOperationTree(
-    ExpressionTree lhs, ExpressionTree rhs, Operator.OperatorType operatorType
+    ExpressionTree lhs, @Nullable ExpressionTree rhs, Operator.OperatorType operatorType
 ) implements ExpressionTree {
     @Override
     public Span span() {
+        if (rhs() == null) {
+            return lhs().span();
+        }
         return lhs().span().merge(rhs().span());
     }
 
@@ -42,7 +42,9 @@ public class RecursivePostorderVisitor<T, R> implements Visitor<T, R> {
     @Override
     public R visit(BinaryOperationTree binaryOperationTree, T data) {
         R r = binaryOperationTree.lhs().accept(this, data);
-        r = binaryOperationTree.rhs().accept(this, accumulate(data, r));
+        if (binaryOperationTree.rhs() != null) {
+            r = binaryOperationTree.rhs().accept(this, accumulate(data, r));
+        }
         r = this.visitor.visit(binaryOperationTree, accumulate(data, r));
         return r;
     }
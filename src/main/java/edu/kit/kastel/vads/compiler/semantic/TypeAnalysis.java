@@ -51,6 +51,11 @@ public class TypeAnalysis implements NoOpVisitor<Namespace<TypeAnalysis.Type>> {
 
     @Override
     public Unit visit(BinaryOperationTree binaryOperationTree, Namespace<Type> data) {
+        // a unary operator has no right operand, its operand is checked like in nested expressions
+        if (binaryOperationTree.rhs() == null) {
+            getExpressionType(binaryOperationTree, data);
+            return Unit.INSTANCE;
+        }
         Type lhsType = getExpressionType(binaryOperationTree.lhs(), data);
         Type rhsType = getExpressionType(binaryOperationTree.rhs(), data);
         
@@ -213,6 +218,23 @@ public class TypeAnalysis implements NoOpVisitor<Namespace<TypeAnalysis.Type>> {
                 throw new SemanticException("Undefined variable: " + ident.name());
             }
             return type;
+        } else if (expression instanceof BinaryOperationTree binary && binary.rhs() == null) {
+            Type type = getExpressionType(binary.lhs(), data);
+            switch (binary.operatorType()) {
+                case BITWISE_NOT -> {
+                    if (type != Type.INT) {
+                        throw new SemanticException("Bitwise negation operator requires integer operand, got " + type);
+                    }
+                    return Type.INT;
+                }
+                case LOGICAL_NOT -> {
+                    if (type != Type.BOOL) {
+                        throw new SemanticException("Logical negation operator requires boolean operand, got " + type);
+                    }
+                    return Type.BOOL;
+                }
+                default -> throw new SemanticException("Unsupported operator: " + binary.operatorType());
+            }
         } else if (expression instanceof BinaryOperationTree binary) {
             // First check operand types
             Type lhsType = getExpressionType(binary.lhs(), data);
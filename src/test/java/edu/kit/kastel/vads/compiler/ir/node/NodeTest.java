@@ -0,0 +1,28 @@
+package edu.kit.kastel.vads.compiler.ir.node;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NodeTest {
+
+    @Test
+    void keepsUserOfOperandStillUsedInAnotherSlot() {
+        IrGraph graph = new IrGraph("main");
+        Block block = graph.startBlock();
+        Node x = new ConstIntNode(block, 1);
+        Node y = new ConstIntNode(block, 2);
+        Node sum = new AddNode(block, x, x);
+
+        sum.setPredecessor(BinaryOperationNode.LEFT, y);
+        assertEquals(List.of(sum), graph.successors(x));
+        assertEquals(List.of(sum), graph.successors(y));
+
+        sum.setPredecessor(BinaryOperationNode.RIGHT, y);
+        assertEquals(List.of(), graph.successors(x));
+        assertEquals(List.of(sum), graph.successors(y));
+    }
+}
@@ -0,0 +1,60 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.node.MulNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GlobalValueNumberingTest {
+
+    @Test
+    void reusesValueOfDominatingBlockInBranch() {
+        // p is replaced by m, which makes u2 equal to u1 while both are still users of m
+        List<IrGraph> graphs = PipelineSupport.optimize("""
+            int main() {
+                int s = 0;
+                for (int i = 0; i < 10; i += 1) {
+                    int m = i * 4;
+                    s = m + s;
+                    if (i > 3) {
+                        int p = i * 4;
+                        int u1 = m + 7;
+                        int u2 = p + 7;
+                        s = s + u1 + u2;
+                    }
+                }
+                return s & 255;
+            }
+            """, 2);
+        PipelineSupport.assertConsistent(graphs);
+        assertEquals(1, countMultiplications(graphs.getFirst()));
+    }
+
+    @Test
+    void keepsRepeatedValueOfSiblingBranch() {
+        // neither branch dominates the other, so each keeps its own multiplication
+        List<IrGraph> graphs = PipelineSupport.optimize("""
+            int main() {
+                int x = 3;
+                int r = 0;
+                for (int i = 0; i < 4; i += 1) {
+                    if (i > 1) {
+                        r = r + i * x;
+                    } else {
+                        r = r - i * x;
+                    }
+                }
+                return r;
+            }
+            """, 2);
+        PipelineSupport.assertConsistent(graphs);
+        assertEquals(2, countMultiplications(graphs.getFirst()));
+    }
+
+    private static long countMultiplications(IrGraph graph) {
+        return PipelineSupport.liveNodes(graph).stream().filter(node -> node instanceof MulNode).count();
+    }
+}
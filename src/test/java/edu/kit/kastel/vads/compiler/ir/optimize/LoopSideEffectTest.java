@@ -0,0 +1,57 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.node.DivNode;
+import edu.kit.kastel.vads.compiler.ir.node.ModNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoopSideEffectTest {
+
+    @Test
+    void keepsUnusedDivisionInWhileLoop() {
+        // z is never read, but the division may trap, so it must stay reachable
+        // through the side effect phi of the loop header
+        for (int level = 0; level <= 2; level++) {
+            List<IrGraph> graphs = PipelineSupport.optimize("""
+                int main() {
+                    int x = -7;
+                    int i = 0;
+                    while (i < 3) {
+                        int z = x / i;
+                        i += 1;
+                    }
+                    return 3;
+                }
+                """, level);
+            PipelineSupport.assertConsistent(graphs);
+            assertEquals(1, countDivisions(graphs.getFirst()), "at -O" + level);
+        }
+    }
+
+    @Test
+    void keepsUnusedModuloInForLoop() {
+        for (int level = 0; level <= 2; level++) {
+            List<IrGraph> graphs = PipelineSupport.optimize("""
+                int main() {
+                    int x = -7;
+                    for (int i = 0; i < 3; i += 1) {
+                        int z = x % i;
+                    }
+                    return 3;
+                }
+                """, level);
+            PipelineSupport.assertConsistent(graphs);
+            assertEquals(1, countDivisions(graphs.getFirst()), "at -O" + level);
+        }
+    }
+
+    private static long countDivisions(IrGraph graph) {
+        return PipelineSupport.liveNodes(graph).stream()
+            .filter(node -> node instanceof DivNode || node instanceof ModNode)
+            .count();
+    }
+}
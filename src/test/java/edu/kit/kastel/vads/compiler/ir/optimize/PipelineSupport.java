@@ -0,0 +1,72 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.backend.aasm.CodeGenerator;
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.SsaTranslation;
+import edu.kit.kastel.vads.compiler.ir.cfg.ControlFlowGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Block;
+import edu.kit.kastel.vads.compiler.ir.node.Node;
+import edu.kit.kastel.vads.compiler.lexer.Lexer;
+import edu.kit.kastel.vads.compiler.parser.Parser;
+import edu.kit.kastel.vads.compiler.parser.TokenSource;
+import edu.kit.kastel.vads.compiler.parser.ast.FunctionTree;
+import edu.kit.kastel.vads.compiler.parser.ast.ProgramTree;
+import edu.kit.kastel.vads.compiler.semantic.SemanticAnalysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// Runs source programs through the front end and the optimizations of a level, and checks the
+/// invariants the backend relies on.
+final class PipelineSupport {
+
+    private PipelineSupport() {
+    }
+
+    /// {@return the optimized graphs of all functions of the program}
+    static List<IrGraph> optimize(String source, int level) {
+        ProgramTree program = new Parser(new TokenSource(Lexer.forString(source))).parseProgram();
+        new SemanticAnalysis().analyze(program);
+        PassManager passManager = PassManager.forLevel(level, false);
+        List<IrGraph> graphs = new ArrayList<>();
+        for (FunctionTree function : program.topLevelTrees()) {
+            graphs.add(passManager.optimize(optimizer -> new SsaTranslation(function, optimizer).translate()));
+        }
+        return graphs;
+    }
+
+    /// {@return the nodes that are reachable from the end block, in schedule order}
+    static List<Node> liveNodes(IrGraph graph) {
+        ControlFlowGraph cfg = new ControlFlowGraph(graph);
+        List<Node> nodes = new ArrayList<>();
+        for (Block block : cfg.blocks()) {
+            nodes.addAll(cfg.nodes(block));
+        }
+        return nodes;
+    }
+
+    /// Checks that every live node is listed as a user of each of its operands, that no two live nodes
+    /// are equal, and that the backend accepts the graphs.
+    static void assertConsistent(List<IrGraph> graphs) {
+        for (IrGraph graph : graphs) {
+            Map<Node, Node> distinct = new HashMap<>();
+            for (Node node : liveNodes(graph)) {
+                for (Node operand : node.predecessors()) {
+                    assertTrue(
+                        graph.successors(operand).stream().anyMatch(user -> user == node),
+                        () -> node + " is missing from the users of " + operand
+                    );
+                }
+                Node equal = distinct.putIfAbsent(node, node);
+                assertNull(equal, () -> node + " is equal to another live node");
+            }
+        }
+        assertDoesNotThrow(() -> new CodeGenerator().generateCode(graphs));
+    }
+}
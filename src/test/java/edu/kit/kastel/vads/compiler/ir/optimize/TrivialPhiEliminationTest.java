@@ -0,0 +1,74 @@
+package edu.kit.kastel.vads.compiler.ir.optimize;
+
+import edu.kit.kastel.vads.compiler.ir.IrGraph;
+import edu.kit.kastel.vads.compiler.ir.node.Phi;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrivialPhiEliminationTest {
+
+    @Test
+    void removesPhisOfValuesNotWrittenInTheLoop() {
+        List<IrGraph> graphs = PipelineSupport.optimize("""
+            int main() {
+                int x = 5;
+                int s = 0;
+                for (int i = 0; i < 10; i += 1) {
+                    s = s + x;
+                }
+                return s;
+            }
+            """, 2);
+        PipelineSupport.assertConsistent(graphs);
+        // only the phis of i and s remain
+        long phis = PipelineSupport.liveNodes(graphs.getFirst()).stream().filter(node -> node instanceof Phi).count();
+        assertEquals(2, phis);
+    }
+
+    @Test
+    void removesPhisAtDefaultLevel() {
+        List<IrGraph> graphs = PipelineSupport.optimize("""
+            int main() {
+                int a = 100;
+                int b = 7;
+                int s = 0;
+                int i = 0;
+                while (i < 10) {
+                    s = s + a * i + (b + i);
+                    i += 1;
+                }
+                return s;
+            }
+            """, 1);
+        PipelineSupport.assertConsistent(graphs);
+        // a and b stay constants instead of becoming phis of the loop header
+        long phis = PipelineSupport.liveNodes(graphs.getFirst()).stream().filter(node -> node instanceof Phi).count();
+        assertEquals(2, phis);
+    }
+
+    @Test
+    void keepsUsersThatBecomeEqualAfterRedirecting() {
+        // a and b are the same value, but the inner loop reads them through distinct phis,
+        // so a + 7 and b + 7 only become equal once the phis are gone
+        List<IrGraph> graphs = PipelineSupport.optimize("""
+            int main() {
+                int s = 0;
+                for (int i = 0; i < 10; i += 1) {
+                    int a = i * 4;
+                    int b = a;
+                    s = a + s;
+                    for (int j = 0; j < 3; j += 1) {
+                        int u1 = a + 7;
+                        int u2 = b + 7;
+                        s = s + u1 + u2;
+                    }
+                }
+                return s & 255;
+            }
+            """, 2);
+        PipelineSupport.assertConsistent(graphs);
+    }
+}